@@ -3,25 +3,22 @@ package com.gempukku.lang;
 
 import com.gempukku.lang.execution.SimpleExecution;
 
-import java.util.HashMap;
 import java.util.Map;
 
-public abstract class AbstractFunctionExecutable implements FunctionExecutable {
+public abstract class AbstractFunctionExecutable implements NativeFunctionExecutable {
+    private MapShape _parameterShape;
+
     @Override
-    public final Execution createExecution(final int line, ExecutionContext executionContext, CallContext callContext) {
-        return new DelayedExecution(getDuration(), 0,
+    public final Execution createNativeExecution(final int line, ExecutionContext executionContext, final Variable[] parameters) {
+        if (_parameterShape == null)
+            _parameterShape = MapShape.of(getParameterNames());
+        final Map<String, Variable> parameterMap = new ShapedMap(_parameterShape, parameters);
+        return new DelayedExecution(getDuration(parameterMap), 0,
                 new SimpleExecution() {
                     @Override
                     protected ExecutionProgress execute(ExecutionContext context, ExecutionCostConfiguration configuration) throws ExecutionException {
-                        final Iterable<String> parameterNames = getParameterNames();
-                        Map<String, Variable> parameters = new HashMap<>();
-                        final CallContext callContext = context.peekCallContext();
-                        for (String parameterName : parameterNames) {
-                            parameters.put(parameterName, callContext.getVariableValue(parameterName));
-                        }
-
-                        context.setReturnValue(new Variable(executeFunction(line, parameters)));
-                        return new ExecutionProgress(configuration.getSetReturnValue());
+                        context.setContextValue(new Variable(executeFunction(line, parameterMap)));
+                        return ExecutionProgress.of(configuration.getSetReturnValue());
                     }
                 });
     }
@@ -38,6 +35,17 @@ public abstract class AbstractFunctionExecutable implements FunctionExecutable {
      */
     protected abstract int getDuration();
 
+    /**
+     * Returns duration of the operation with the specified parameters in computer cycles. Functions, whose work
+     * depends on the size of their input, should override this method, so that the whole work is charged at once.
+     *
+     * @param parameters Parameters that were sent to this function.
+     * @return Duration in computer cycles.
+     */
+    protected int getDuration(Map<String, Variable> parameters) {
+        return getDuration();
+    }
+
     /**
      * Executes this function, gets passed
      * parameters passed to the function, as defined by getParameterNames method in this class. The returned object
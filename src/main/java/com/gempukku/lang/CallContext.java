@@ -1,15 +1,25 @@
 package com.gempukku.lang;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 
+/**
+ * Variables of a single scope. Variables are stored in slots, variables defined in the program have their slot
+ * index resolved at parse time, so they can be accessed without looking them up by name.
+ */
 public class CallContext {
+    private static final String[] EMPTY_NAMES = new String[0];
+    private static final Variable[] EMPTY_VARIABLES = new Variable[0];
+
     private CallContext _parentContext;
-    private boolean _consumesReturn;
     private boolean _consumesBreak;
-    private Map<String, Variable> _variables = new HashMap<String, Variable>();
+    private boolean _consumesReturn;
+    private String[] _names = EMPTY_NAMES;
+    private Variable[] _variables = EMPTY_VARIABLES;
+    private int _slotCount;
 
     public CallContext(CallContext parentContext, boolean consumesBreak, boolean consumesReturn) {
         _parentContext = parentContext;
@@ -30,25 +40,75 @@ public class CallContext {
     }
 
     public Collection<Variable> getVariablesInContext() {
-        return Collections.unmodifiableCollection(_variables.values());
+        if (_slotCount == 0)
+            return Collections.emptyList();
+        List<Variable> result = new ArrayList<Variable>(_slotCount);
+        for (int i = 0; i < _slotCount; i++) {
+            if (_variables[i] != null)
+                result.add(_variables[i]);
+        }
+        return Collections.unmodifiableList(result);
     }
 
     public Variable getVariableValue(String name) throws ExecutionException {
-        final Variable variable = _variables.get(name);
-        if (variable != null)
-            return variable;
-        else if (_parentContext != null)
+        for (int i = 0; i < _slotCount; i++) {
+            if (name.equals(_names[i]))
+                return _variables[i];
+        }
+        if (_parentContext != null)
             return _parentContext.getVariableValue(name);
         else
             throw new ExecutionException(-1, "Variable with this name is not defined in this scope: " + name);
     }
 
+    /**
+     * Returns the variable from the slot resolved at parse time.
+     *
+     * @param name  Name of the variable, used for reporting an error only.
+     * @param depth Number of scopes to go up from this one.
+     * @param index Index of the slot in that scope.
+     */
+    public Variable getVariableValue(String name, int depth, int index) throws ExecutionException {
+        CallContext context = this;
+        for (int i = 0; i < depth; i++)
+            context = context._parentContext;
+        if (index < context._slotCount) {
+            final Variable variable = context._variables[index];
+            if (variable != null)
+                return variable;
+        }
+        throw new ExecutionException(-1, "Variable with this name is not defined in this scope: " + name);
+    }
+
     public Variable defineVariable(String name) throws ExecutionException {
-        Variable variable = _variables.get(name);
-        if (variable != null)
+        for (int i = 0; i < _slotCount; i++) {
+            if (name.equals(_names[i]))
+                throw new ExecutionException(-1, "Variable with this name is already defined in this scope: " + name);
+        }
+        return defineVariable(name, _slotCount);
+    }
+
+    /**
+     * Defines the variable in a slot resolved at parse time.
+     */
+    public Variable defineVariable(String name, int index) throws ExecutionException {
+        return defineVariable(name, index, new Variable(null));
+    }
+
+    /**
+     * Stores an existing variable in a slot resolved at parse time.
+     */
+    public Variable defineVariable(String name, int index, Variable variable) throws ExecutionException {
+        if (index >= _variables.length) {
+            final int newLength = Math.max(index + 1, _variables.length * 2);
+            _names = Arrays.copyOf(_names, newLength);
+            _variables = Arrays.copyOf(_variables, newLength);
+        }
+        if (_variables[index] != null)
             throw new ExecutionException(-1, "Variable with this name is already defined in this scope: " + name);
-        variable = new Variable(null);
-        _variables.put(name, variable);
+        _names[index] = name;
+        _variables[index] = variable;
+        _slotCount = Math.max(_slotCount, index + 1);
         return variable;
     }
 }
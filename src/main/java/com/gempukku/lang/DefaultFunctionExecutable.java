@@ -1,14 +1,26 @@
 package com.gempukku.lang;
 
 import java.util.Collection;
+import java.util.List;
 
 public class DefaultFunctionExecutable implements FunctionExecutable {
     private CallContext _callContext;
     private ExecutableStatement _statement;
     private Collection<String> _parameterNames;
 
-    public DefaultFunctionExecutable(CallContext callContext, Collection<String> parameterNames) {
-        _callContext = callContext;
+    /**
+     * @param definingContext   Context the function is defined in.
+     * @param capturedVariables Variables referenced by the function, resolved from the defining context, these are
+     *                          stored in the closure context of the function, in this order.
+     * @param parameterNames    Names of the parameters of the function.
+     */
+    public DefaultFunctionExecutable(CallContext definingContext, List<VariableReference> capturedVariables,
+                                     Collection<String> parameterNames) throws ExecutionException {
+        _callContext = new CallContext(null, false, false);
+        for (int i = 0; i < capturedVariables.size(); i++) {
+            final VariableReference capturedVariable = capturedVariables.get(i);
+            _callContext.defineVariable(capturedVariable.getName(), i, capturedVariable.getVariable(definingContext));
+        }
         _parameterNames = parameterNames;
     }
 
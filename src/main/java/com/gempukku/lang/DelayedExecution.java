@@ -26,7 +26,7 @@ public class DelayedExecution implements Execution {
         }
         if (!_delayed) {
             _delayed = true;
-            return new ExecutionProgress(_delay, _minExecutionTicks);
+            return ExecutionProgress.of(_delay, _minExecutionTicks);
         }
         return _execution.executeNextStatement(executionContext, configuration);
     }
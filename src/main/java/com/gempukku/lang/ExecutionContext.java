@@ -1,26 +1,41 @@
 package com.gempukku.lang;
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 public class ExecutionContext {
-    private LinkedList<LinkedList<Execution>> _executionGroups = new LinkedList<LinkedList<Execution>>();
+    // Executions of all the groups are kept in a single stack, each group starts at the index stored in _groupStarts
+    private Execution[] _executions = new Execution[16];
+    private int _executionCount;
+    private int[] _groupStarts = new int[8];
+    private CallContext[] _groupCallContexts = new CallContext[8];
+    private int _groupCount;
+
     private Variable _contextValue;
     private Variable _returnValue;
 
     private boolean _returnFromFunction;
     private boolean _breakFromBlock;
 
-    private LinkedList<CallContext> _groupCallContexts = new LinkedList<CallContext>();
-    private Map<Variable.Type, PropertyProducer> _perTypeProperties = new HashMap<Variable.Type, PropertyProducer>();
+    private Map<Variable.Type, PropertyProducer> _perTypeProperties = new EnumMap<Variable.Type, PropertyProducer>(Variable.Type.class);
+    private MemberCache[] _memberCaches = new MemberCache[0];
 
     private int _stackTraceSize = 0;
+    private int _memoryCharged = 0;
+    // Lists, maps and functions with closures referenced by variables reachable by the program, with the number of
+    // these variables
+    private Map<Object, Integer> _valueReferences = new IdentityHashMap<Object, Integer>();
+    // Values first referenced or no longer referenced, whose variables are yet to be acquired or released
+    private ArrayDeque<Object> _pendingValues = new ArrayDeque<Object>();
     private boolean _suspended;
+    private int _accumulatedCost;
+    private int _minExecutionTime;
     private ExecutionCostConfiguration _configuration;
 
     public ExecutionContext(ExecutionCostConfiguration configuration) {
@@ -31,61 +46,302 @@ public class ExecutionContext {
         return _stackTraceSize;
     }
 
+    /**
+     * Calculates memory used by the program, by walking all the values reachable from the call contexts.
+     */
     public int getMemoryUsage() {
-        Set<Object> counted = new HashSet<Object>();
+        return calculateMemoryUsage(new IdentityHashMap<Variable, Integer>(), new IdentityHashMap<Object, Integer>());
+    }
+
+    /**
+     * Checks if the memory used by the program exceeds the limit. Memory is charged incrementally, when call
+     * contexts are stacked, variables defined and values stored, and credited when values are overwritten and
+     * contexts removed. Each variable counts the places reachable by the program it is stored in, each list, map and
+     * function counts the variables it is stored in, these are charged when first referenced and credited when no
+     * longer referenced. Values referencing each other are not credited that way, so full calculation is done when
+     * the charged memory exceeds the limit, which then resets the counts.
+     */
+    public boolean isMemoryExceeded(int memoryLimit) {
+        if (_memoryCharged <= memoryLimit)
+            return false;
+        Map<Variable, Integer> variableReferences = new IdentityHashMap<Variable, Integer>();
+        Map<Object, Integer> valueReferences = new IdentityHashMap<Object, Integer>();
+        _memoryCharged = calculateMemoryUsage(variableReferences, valueReferences);
+        // Values no longer reachable are not referenced by their variables anymore, in case they are stored again
+        for (Object value : _valueReferences.keySet()) {
+            if (!valueReferences.containsKey(value)) {
+                if (value instanceof VariableList)
+                    ((VariableList) value).setReachable(false);
+                for (Variable variable : getReferencedVariables(value)) {
+                    if (!variableReferences.containsKey(variable))
+                        variable.setReferences(0);
+                }
+            }
+        }
+        for (Map.Entry<Variable, Integer> variableReference : variableReferences.entrySet())
+            variableReference.getKey().setReferences(variableReference.getValue());
+        for (Object value : valueReferences.keySet()) {
+            if (value instanceof VariableList)
+                ((VariableList) value).setReachable(true);
+        }
+        _valueReferences = valueReferences;
+        return _memoryCharged > memoryLimit;
+    }
+
+    /**
+     * Charges memory of a variable stored in a list or map by a function, i.e. an element added to a list.
+     */
+    public void chargeStoredValue(Object container, Variable variable) {
+        if (_valueReferences.containsKey(container))
+            _memoryCharged += acquire(variable);
+    }
+
+    /**
+     * Credits memory of a variable removed from a list or map by a function.
+     */
+    public void creditRemovedValue(Object container, Variable variable) {
+        if (_valueReferences.containsKey(container)) {
+            // Elements of a list of numbers are not stored as variables
+            if (variable.getReferences() == 0)
+                _memoryCharged -= getStoredSize(variable);
+            else
+                _memoryCharged -= release(variable);
+        }
+    }
+
+    private int calculateMemoryUsage(Map<Variable, Integer> variableReferences, Map<Object, Integer> valueReferences) {
+        // Values are walked from a stack, as chains of lists and maps can be too long to recurse
+        final ArrayDeque<Object> pendingValues = new ArrayDeque<Object>();
         int result = 0;
-        for (CallContext groupCallContext : _groupCallContexts)
-            result += getVariablesSize(counted, groupCallContext.getVariablesInContext());
+        for (int i = 0; i < _groupCount; i++) {
+            result += 4;
+            for (Variable variable : _groupCallContexts[i].getVariablesInContext()) {
+                result += sizeOf(variableReferences, valueReferences, pendingValues, variable);
+                while (!pendingValues.isEmpty()) {
+                    for (Variable element : getReferencedVariables(pendingValues.pop()))
+                        result += sizeOf(variableReferences, valueReferences, pendingValues, element);
+                }
+            }
+        }
         return result;
     }
 
-    private int sizeOf(Set<Object> counted, Object value) {
-        if (value == null) {
-            return 1;
-        } else if (value instanceof String) {
-            return ((String) value).length();
-        } else if (value instanceof Number) {
-            return 4;
-        } else if (value instanceof Map) {
-            Map<String, Variable> map = (Map<String, Variable>) value;
-            return 4 + getVariablesSize(counted, map.values());
-        } else if (value instanceof List) {
-            List<Variable> list = (List<Variable>) value;
-            return 4+ getVariablesSize(counted, list);
-        } else if (value instanceof Boolean) {
-            return 1;
-        } else if (value instanceof FunctionExecutable) {
-            CallContext functionContext = ((FunctionExecutable) value).getCallContext();
-            return 4 + getVariablesSize(counted, functionContext.getVariablesInContext());
-        } else if (value instanceof ObjectDefinition) {
-            return 4;
-        } else if (value instanceof CustomObject) {
-            return ((CustomObject) value).sizeOf();
-        } else
-            throw new UnsupportedOperationException("Unknown type of variable value: " + value.getClass().getSimpleName());
-    }
-
-    private int getVariablesSize(Set<Object> counted, Collection<Variable> variables) {
-        int result = 4;
-        for (Variable variable : variables) {
-            Object value = variable.getValue();
-            if (!counted.contains(value)) {
-                counted.add(value);
-                result += sizeOf(counted, value);
+    /**
+     * Counts the reference to the variable, returns its size, if it has not been counted yet. Values it references,
+     * counted for the first time, are pushed to pendingValues.
+     */
+    private int sizeOf(Map<Variable, Integer> variableReferences, Map<Object, Integer> valueReferences, ArrayDeque<Object> pendingValues, Variable variable) {
+        final Integer references = variableReferences.get(variable);
+        variableReferences.put(variable, (references == null) ? 1 : references + 1);
+        if (references != null)
+            return 0;
+        int result = getStoredSize(variable);
+        final Object value = getReferencedValue(variable);
+        if (value != null) {
+            final Integer valueReferenceCount = valueReferences.get(value);
+            valueReferences.put(value, (valueReferenceCount == null) ? 1 : valueReferenceCount + 1);
+            if (valueReferenceCount == null) {
+                result += getValueSize(value);
+                pendingValues.push(value);
             }
         }
         return result;
     }
 
+    /**
+     * Counts a reference to the variable, returns the memory to charge, if it was not referenced before.
+     */
+    private int acquire(Variable variable) {
+        return addReference(variable) + acquirePendingValues();
+    }
+
+    /**
+     * Removes a reference to the variable, returns the memory to credit, if it is no longer referenced.
+     */
+    private int release(Variable variable) {
+        return removeReference(variable) + releasePendingValues();
+    }
+
+    private int acquireValue(Object value) {
+        return addValueReference(value) + acquirePendingValues();
+    }
+
+    private int releaseValue(Object value) {
+        return removeValueReference(value) + releasePendingValues();
+    }
+
+    private int acquirePendingValues() {
+        int result = 0;
+        while (!_pendingValues.isEmpty()) {
+            for (Variable element : getReferencedVariables(_pendingValues.pop()))
+                result += addReference(element);
+        }
+        return result;
+    }
+
+    private int releasePendingValues() {
+        int result = 0;
+        while (!_pendingValues.isEmpty()) {
+            final Object value = _pendingValues.pop();
+            for (Variable element : getReferencedVariables(value))
+                result += removeReference(element);
+            if (value instanceof VariableList)
+                ((VariableList) value).setReachable(false);
+        }
+        return result;
+    }
+
+    private int addReference(Variable variable) {
+        final int references = variable.getReferences();
+        variable.setReferences(references + 1);
+        if (references > 0)
+            return 0;
+        return getStoredSize(variable) + addValueReference(getReferencedValue(variable));
+    }
+
+    private int removeReference(Variable variable) {
+        final int references = variable.getReferences();
+        // Variables not reachable by the program were not charged
+        if (references == 0)
+            return 0;
+        variable.setReferences(references - 1);
+        if (references > 1)
+            return 0;
+        return getStoredSize(variable) + removeValueReference(getReferencedValue(variable));
+    }
+
+    private int addValueReference(Object value) {
+        if (value == null)
+            return 0;
+        final Integer references = _valueReferences.get(value);
+        _valueReferences.put(value, (references == null) ? 1 : references + 1);
+        if (references != null)
+            return 0;
+        if (value instanceof VariableList)
+            ((VariableList) value).setReachable(true);
+        _pendingValues.push(value);
+        return getValueSize(value);
+    }
+
+    private int removeValueReference(Object value) {
+        if (value == null)
+            return 0;
+        final Integer references = _valueReferences.get(value);
+        if (references == null)
+            return 0;
+        if (references > 1) {
+            _valueReferences.put(value, references - 1);
+            return 0;
+        }
+        _valueReferences.remove(value);
+        _pendingValues.push(value);
+        return getValueSize(value);
+    }
+
+    /**
+     * Returns the value of the variable referencing other variables - a list, a map or a function with a closure.
+     */
+    private static Object getReferencedValue(Variable variable) {
+        final Variable.Type type = variable.getType();
+        if (type == Variable.Type.LIST || type == Variable.Type.MAP)
+            return variable.getValue();
+        if (type == Variable.Type.FUNCTION && variable.getValue() instanceof DefaultFunctionExecutable)
+            return variable.getValue();
+        return null;
+    }
+
+    /**
+     * Size of a value returned by getReferencedValue, without the variables it references. Elements of a list of
+     * numbers are not stored as variables, these are included.
+     */
+    private static int getValueSize(Object value) {
+        if (value instanceof VariableList && ((VariableList) value).isPacked())
+            return 8 + 4 * ((VariableList) value).size();
+        if (value instanceof FunctionExecutable)
+            return 0;
+        return 8;
+    }
+
+    private static Collection<Variable> getReferencedVariables(Object value) {
+        if (value instanceof Map)
+            return ((Map<String, Variable>) value).values();
+        if (value instanceof FunctionExecutable)
+            return ((FunctionExecutable) value).getCallContext().getVariablesInContext();
+        if (value instanceof VariableList && ((VariableList) value).isPacked())
+            return Collections.emptyList();
+        return (List<Variable>) value;
+    }
+
+    /**
+     * Size charged for a value, for each variable it is stored in. Lists, maps and variables of closures of
+     * functions are charged once, when first referenced.
+     */
+    private int getStoredSize(Variable variable) {
+        switch (variable.getType()) {
+            case NULL:
+            case BOOLEAN:
+                return 1;
+            case NUMBER:
+            case OBJECT:
+                return 4;
+            case STRING:
+                return variable.getStringLength();
+            case FUNCTION:
+                return 8;
+            case CUSTOM_OBJECT:
+                return ((CustomObject) variable.getValue()).sizeOf();
+            default:
+                return 0;
+        }
+    }
+
     public void stackExecution(Execution execution) {
-        _executionGroups.getLast().add(execution);
+        if (_executionCount == _executions.length)
+            _executions = Arrays.copyOf(_executions, _executionCount * 2);
+        _executions[_executionCount++] = execution;
+    }
+
+    /**
+     * Executes steps of the program until the accumulated cost of the executed steps exceeds the budget, a step
+     * requests a minimum execution time, the program gets suspended or it finishes. The accumulated cost and
+     * minimum execution time of the last step are available via getAccumulatedCost and getMinExecutionTime.
+     *
+     * @param budget             Cost of the steps that can be executed.
+     * @param maxStackTraceSize  Maximum stack trace size, exceeding it throws "StackOverflow".
+     * @param memoryLimit        Maximum memory usage, exceeding it throws "OutOfMemory".
+     * @throws ExecutionException If execution of a step fails, or a limit is exceeded.
+     */
+    public void runUntil(int budget, int maxStackTraceSize, int memoryLimit) throws ExecutionException {
+        _accumulatedCost = 0;
+        _minExecutionTime = 0;
+        while (!_suspended && _groupCount > 0) {
+            final ExecutionProgress executionProgress = executeNext();
+
+            if (_stackTraceSize > maxStackTraceSize)
+                throw new ExecutionException(-1, "StackOverflow");
+            if (isMemoryExceeded(memoryLimit))
+                throw new ExecutionException(-1, "OutOfMemory");
+
+            _accumulatedCost += executionProgress.getCost();
+            _minExecutionTime = executionProgress.getMinExecutionTime();
+            if (_minExecutionTime > 0 || _accumulatedCost > budget)
+                return;
+        }
+    }
+
+    public int getAccumulatedCost() {
+        return _accumulatedCost;
+    }
+
+    public int getMinExecutionTime() {
+        return _minExecutionTime;
     }
 
     public ExecutionProgress executeNext() throws ExecutionException {
-        while (!_executionGroups.isEmpty()) {
-            final LinkedList<Execution> inBlockExecutionStack = _executionGroups.getLast();
-            while (!inBlockExecutionStack.isEmpty()) {
-                final Execution execution = inBlockExecutionStack.getLast();
+        while (_groupCount > 0) {
+            final int groupStart = _groupStarts[_groupCount - 1];
+            while (_executionCount > groupStart) {
+                final Execution execution = _executions[_executionCount - 1];
                 if (execution.hasNextExecution(this)) {
                     final ExecutionProgress executionProgress = execution.executeNextStatement(this, _configuration);
                     if (_breakFromBlock)
@@ -94,28 +350,37 @@ public class ExecutionContext {
                         doTheReturn();
                     return executionProgress;
                 } else
-                    inBlockExecutionStack.removeLast();
+                    _executions[--_executionCount] = null;
             }
-            _executionGroups.removeLast();
-            removeLastCallContext();
+            removeLastExecutionGroup();
         }
-        return new ExecutionProgress(0);
+        return ExecutionProgress.of(0);
     }
 
-    private CallContext removeLastCallContext() {
-        final CallContext removedCallContext = _groupCallContexts.removeLast();
+    private CallContext removeLastExecutionGroup() {
+        _groupCount--;
+        final int groupStart = _groupStarts[_groupCount];
+        Arrays.fill(_executions, groupStart, _executionCount, null);
+        _executionCount = groupStart;
+
+        final CallContext removedCallContext = _groupCallContexts[_groupCount];
+        _groupCallContexts[_groupCount] = null;
         if (removedCallContext.isConsumesReturn())
             _stackTraceSize--;
+        // Variables captured by functions remain referenced by closure contexts
+        int size = 4;
+        for (Variable variable : removedCallContext.getVariablesInContext())
+            size += release(variable);
+        _memoryCharged -= size;
         return removedCallContext;
     }
 
     private void doTheBreak() throws ExecutionException {
         CallContext callContext;
         do {
-            if (_groupCallContexts.isEmpty())
+            if (_groupCount == 0)
                 throw new ExecutionException(-1, "Break invoked without a containing block");
-            callContext = removeLastCallContext();
-            _executionGroups.removeLast();
+            callContext = removeLastExecutionGroup();
         } while (!callContext.isConsumesBreak());
         _breakFromBlock = false;
     }
@@ -123,8 +388,7 @@ public class ExecutionContext {
     private void doTheReturn() {
         CallContext callContext;
         do {
-            callContext = removeLastCallContext();
-            _executionGroups.removeLast();
+            callContext = removeLastExecutionGroup();
         } while (!callContext.isConsumesReturn());
     }
 
@@ -155,24 +419,80 @@ public class ExecutionContext {
     }
 
     public CallContext peekCallContext() {
-        return _groupCallContexts.getLast();
+        return _groupCallContexts[_groupCount - 1];
+    }
+
+    public Variable defineVariable(String name, int index) throws ExecutionException {
+        final Variable variable = peekCallContext().defineVariable(name, index);
+        _memoryCharged += acquire(variable);
+        return variable;
     }
 
     public void setVariableValue(Variable variable, Object value) throws ExecutionException {
+        // Variables not reachable by the program are not charged
+        if (variable.getReferences() == 0) {
+            variable.setValue(value);
+            return;
+        }
+        final int previousSize = getStoredSize(variable);
+        final Object previousValue = getReferencedValue(variable);
+        variable.setValue(value);
+        _memoryCharged += getStoredSize(variable) + acquireValue(getReferencedValue(variable)) - previousSize - releaseValue(previousValue);
+    }
+
+    public void setVariableValue(Variable variable, Variable value) throws ExecutionException {
+        // Variables not reachable by the program are not charged
+        if (variable.getReferences() == 0) {
+            variable.setValue(value);
+            return;
+        }
+        final int previousSize = getStoredSize(variable);
+        final Object previousValue = getReferencedValue(variable);
         variable.setValue(value);
+        _memoryCharged += getStoredSize(variable) + acquireValue(getReferencedValue(variable)) - previousSize - releaseValue(previousValue);
     }
 
     public void stackExecutionGroup(CallContext callContext, Execution execution) {
-        _groupCallContexts.add(callContext);
-        LinkedList<Execution> functionExecutionStack = new LinkedList<Execution>();
-        functionExecutionStack.add(execution);
-        _executionGroups.add(functionExecutionStack);
+        if (_groupCount == _groupCallContexts.length) {
+            _groupCallContexts = Arrays.copyOf(_groupCallContexts, _groupCount * 2);
+            _groupStarts = Arrays.copyOf(_groupStarts, _groupCount * 2);
+        }
+        _groupCallContexts[_groupCount] = callContext;
+        _groupStarts[_groupCount] = _executionCount;
+        _groupCount++;
+        int size = 4;
+        for (Variable variable : callContext.getVariablesInContext())
+            size += acquire(variable);
+        _memoryCharged += size;
+        stackExecution(execution);
         if (callContext.isConsumesReturn())
             _stackTraceSize++;
     }
 
+    /**
+     * Removes the execution groups up to and including the one of the function being executed, and stacks
+     * the execution group of a function called in tail position in its place. The result of the called function
+     * is then returned directly to the caller of the removed one.
+     */
+    public void replaceFunctionExecutionGroup(CallContext callContext, Execution execution) {
+        doTheReturn();
+        // Group of the call of the function is left with finished executions only (the body has been removed)
+        while (_groupCount > 0 && !hasNextExecutionInLastGroup())
+            removeLastExecutionGroup();
+        stackExecutionGroup(callContext, execution);
+    }
+
+    private boolean hasNextExecutionInLastGroup() {
+        final int groupStart = _groupStarts[_groupCount - 1];
+        for (int i = _executionCount - 1; i >= groupStart; i--) {
+            if (_executions[i].hasNextExecution(this))
+                return true;
+        }
+        return false;
+    }
+
     public boolean isFinished() {
-        return _executionGroups.isEmpty();
+        return _groupCount == 0;
     }
 
     public void setSuspended(boolean suspended) {
@@ -193,4 +513,36 @@ public class ExecutionContext {
 
         return _perTypeProperties.get(object.getType()).exposePropertyFor(this, object, property);
     }
+
+    /**
+     * Resolves member at a call site, using a monomorphic inline cache. Members of lists, maps and strings depend only
+     * on the object they belong to, so as long as the call site is executed on the same object, the member resolved
+     * previously is reused. Caches are kept per execution context, as programs are shared between computers.
+     */
+    public Variable resolveMember(Variable object, String property, int callSiteIndex) throws ExecutionException {
+        if (callSiteIndex >= _memberCaches.length)
+            _memberCaches = Arrays.copyOf(_memberCaches, Math.max(callSiteIndex + 1, _memberCaches.length * 2));
+
+        MemberCache memberCache = _memberCaches[callSiteIndex];
+        final Object value = object.getValue();
+        if (memberCache != null && memberCache._object == value)
+            return memberCache._member;
+
+        final Variable member = resolveMember(object, property);
+        final Variable.Type type = object.getType();
+        if (type == Variable.Type.LIST || type == Variable.Type.MAP || type == Variable.Type.STRING) {
+            if (memberCache == null) {
+                memberCache = new MemberCache();
+                _memberCaches[callSiteIndex] = memberCache;
+            }
+            memberCache._object = value;
+            memberCache._member = member;
+        }
+        return member;
+    }
+
+    private static class MemberCache {
+        private Object _object;
+        private Variable _member;
+    }
 }
@@ -1,6 +1,14 @@
 package com.gempukku.lang;
 
 public class ExecutionProgress {
+    private static final int CACHED_COST_LIMIT = 1024;
+    private static final ExecutionProgress[] CACHED_PROGRESSES = new ExecutionProgress[CACHED_COST_LIMIT];
+
+    static {
+        for (int i = 0; i < CACHED_COST_LIMIT; i++)
+            CACHED_PROGRESSES[i] = new ExecutionProgress(i, 0);
+    }
+
     private int _cost;
     private int _minExecutionTime;
 
@@ -13,6 +21,22 @@ public class ExecutionProgress {
         _minExecutionTime = minExecutionTime;
     }
 
+    /**
+     * Returns progress with the specified cost. Progress is immutable, so instances for common costs are shared,
+     * instead of creating a new object for each executed step.
+     */
+    public static ExecutionProgress of(int cost) {
+        if (cost >= 0 && cost < CACHED_COST_LIMIT)
+            return CACHED_PROGRESSES[cost];
+        return new ExecutionProgress(cost, 0);
+    }
+
+    public static ExecutionProgress of(int cost, int minExecutionTime) {
+        if (minExecutionTime == 0)
+            return of(cost);
+        return new ExecutionProgress(cost, minExecutionTime);
+    }
+
     public int getCost() {
         return _cost;
     }
@@ -46,7 +46,7 @@ public class IllegalSyntaxException extends Exception {
             final TermBlock lastTermBlock = termIterator.getLast();
             if (lastTermBlock.isTerm()) {
                 final Term lastTerm = lastTermBlock.getTerm();
-                return lastTerm.getColumn() + lastTerm.getValue().length();
+                return lastTerm.getColumn() + lastTerm.length();
             } else {
                 return lastTermBlock.getBlockEndColumn();
             }
@@ -7,7 +7,8 @@ import java.util.Set;
 public class LangDefinition {
     private static final Set<String> RESERVED_WORDS = new HashSet<String>(
             Arrays.asList(
-                    "for", "if", "while", "return", "break", "function", "var", "else", "this", "true", "false", "null"
+                    "for", "if", "while", "return", "break", "function", "var", "else", "this", "true", "false", "null",
+                    "switch", "case", "default"
             ));
 
     public static boolean isReservedWord(String word) {
@@ -1,28 +1,61 @@
 package com.gempukku.lang;
 
+import com.gempukku.lang.execution.ValueOperations;
+
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 
 public class ListPropertyProducer implements PropertyProducer {
+    // Functions working on all the elements of a list are charged for each element processed
+    private static final int DURATION_PER_ELEMENT = 5;
+
     @Override
     public Variable exposePropertyFor(ExecutionContext context, Variable object, String property) throws ExecutionException {
         List<Variable> list = (List<Variable>) object.getValue();
         if (property.equals("size"))
             return new Variable(new SizeFunction(list));
         else if (property.equals("add"))
-            return new Variable(new AddElementFunction(list));
+            return new Variable(new AddElementFunction(context, list));
         else if (property.equals("remove"))
-            return new Variable(new RemoveElementFunction(list));
+            return new Variable(new RemoveElementFunction(context, list));
+        else if (property.equals("addAll"))
+            return new Variable(new AddAllFunction(context, list));
+        else if (property.equals("indexOf"))
+            return new Variable(new IndexOfFunction(list));
+        else if (property.equals("contains"))
+            return new Variable(new ContainsFunction(list));
+        else if (property.equals("slice"))
+            return new Variable(new SliceFunction(list));
+        else if (property.equals("join"))
+            return new Variable(new JoinFunction(list));
+        else if (property.equals("sort"))
+            return new Variable(new SortFunction(list));
         return new Variable(null);
     }
 
+    static int getLinearDuration(int elementCount) {
+        return 100 + DURATION_PER_ELEMENT * elementCount;
+    }
+
+    private static int indexOf(List<Variable> list, Variable element) {
+        final int size = list.size();
+        for (int i = 0; i < size; i++) {
+            if (ValueOperations.valuesEqual(list.get(i), element))
+                return i;
+        }
+        return -1;
+    }
+
     private static class RemoveElementFunction extends AbstractFunctionExecutable {
+        private ExecutionContext _context;
         private List<Variable> _list;
 
-        private RemoveElementFunction(List<Variable> list) {
+        private RemoveElementFunction(ExecutionContext context, List<Variable> list) {
+            _context = context;
             _list = list;
         }
 
@@ -42,18 +75,22 @@ public class ListPropertyProducer implements PropertyProducer {
             if (indexVar.getType() != Variable.Type.NUMBER)
                 throw new ExecutionException(line, "Expected NUMBER index in remove()");
 
-            int index = ((Number) indexVar.getValue()).intValue();
+            int index = (int) indexVar.getNumber();
             if (index < 0 || index >= _list.size())
                 throw new ExecutionException(line, "Index out of bounds in remove()");
 
-            return _list.remove(index).getValue();
+            final Variable removed = _list.remove(index);
+            _context.creditRemovedValue(_list, removed);
+            return removed.getValue();
         }
     }
 
     private static class AddElementFunction extends AbstractFunctionExecutable {
+        private ExecutionContext _context;
         private List<Variable> _list;
 
-        private AddElementFunction(List<Variable> list) {
+        private AddElementFunction(ExecutionContext context, List<Variable> list) {
+            _context = context;
             _list = list;
         }
 
@@ -70,9 +107,259 @@ public class ListPropertyProducer implements PropertyProducer {
         @Override
         protected Object executeFunction(int line, Map<String, Variable> parameters) throws ExecutionException {
             final Object value = parameters.get("element").getValue();
-            _list.add(new Variable(value));
+            final Variable element = new Variable(value);
+            _list.add(element);
+            _context.chargeStoredValue(_list, element);
+            return null;
+        }
+    }
+
+    private static class AddAllFunction extends AbstractFunctionExecutable {
+        private ExecutionContext _context;
+        private List<Variable> _list;
+
+        private AddAllFunction(ExecutionContext context, List<Variable> list) {
+            _context = context;
+            _list = list;
+        }
+
+        @Override
+        protected int getDuration() {
+            return 100;
+        }
+
+        @Override
+        protected int getDuration(Map<String, Variable> parameters) {
+            final Variable elementsVar = parameters.get("elements");
+            if (elementsVar.getType() != Variable.Type.LIST)
+                return getDuration();
+            return getLinearDuration(((List<Variable>) elementsVar.getValue()).size());
+        }
+
+        @Override
+        public Collection<String> getParameterNames() {
+            return Arrays.asList("elements");
+        }
+
+        @Override
+        protected Object executeFunction(int line, Map<String, Variable> parameters) throws ExecutionException {
+            final Variable elementsVar = parameters.get("elements");
+            if (elementsVar.getType() != Variable.Type.LIST)
+                throw new ExecutionException(line, "Expected LIST in addAll()");
+
+            final List<Variable> elements = (List<Variable>) elementsVar.getValue();
+            // Elements are read before adding, in case the list is added to itself
+            final int count = elements.size();
+            final Variable[] added = new Variable[count];
+            for (int i = 0; i < count; i++)
+                added[i] = new Variable(elements.get(i).getValue());
+            for (Variable element : added) {
+                _list.add(element);
+                _context.chargeStoredValue(_list, element);
+            }
+            return null;
+        }
+    }
+
+    private static class IndexOfFunction extends AbstractFunctionExecutable {
+        private List<Variable> _list;
+
+        private IndexOfFunction(List<Variable> list) {
+            _list = list;
+        }
+
+        @Override
+        protected int getDuration() {
+            return getLinearDuration(_list.size());
+        }
+
+        @Override
+        public Collection<String> getParameterNames() {
+            return Arrays.asList("element");
+        }
+
+        @Override
+        protected Object executeFunction(int line, Map<String, Variable> parameters) throws ExecutionException {
+            return indexOf(_list, parameters.get("element"));
+        }
+    }
+
+    private static class ContainsFunction extends AbstractFunctionExecutable {
+        private List<Variable> _list;
+
+        private ContainsFunction(List<Variable> list) {
+            _list = list;
+        }
+
+        @Override
+        protected int getDuration() {
+            return getLinearDuration(_list.size());
+        }
+
+        @Override
+        public Collection<String> getParameterNames() {
+            return Arrays.asList("element");
+        }
+
+        @Override
+        protected Object executeFunction(int line, Map<String, Variable> parameters) throws ExecutionException {
+            return indexOf(_list, parameters.get("element")) > -1;
+        }
+    }
+
+    private static class SliceFunction extends AbstractFunctionExecutable {
+        private List<Variable> _list;
+
+        private SliceFunction(List<Variable> list) {
+            _list = list;
+        }
+
+        @Override
+        protected int getDuration() {
+            return getLinearDuration(_list.size());
+        }
+
+        @Override
+        public Collection<String> getParameterNames() {
+            return Arrays.asList("start", "end");
+        }
+
+        @Override
+        protected Object executeFunction(int line, Map<String, Variable> parameters) throws ExecutionException {
+            final Variable startVar = parameters.get("start");
+            if (startVar.getType() != Variable.Type.NUMBER)
+                throw new ExecutionException(line, "Expected NUMBER start in slice()");
+            final Variable endVar = parameters.get("end");
+            int end;
+            if (endVar.getType() == Variable.Type.NULL)
+                end = _list.size();
+            else if (endVar.getType() == Variable.Type.NUMBER)
+                end = (int) endVar.getNumber();
+            else
+                throw new ExecutionException(line, "Expected NUMBER or NULL end in slice()");
+
+            int start = (int) startVar.getNumber();
+            if (start < 0 || end > _list.size() || start > end)
+                throw new ExecutionException(line, "Index out of bounds in slice()");
+
+            List<Variable> result = new VariableList(end - start);
+            for (int i = start; i < end; i++)
+                result.add(new Variable(_list.get(i).getValue()));
+            return result;
+        }
+    }
+
+    private static class JoinFunction extends AbstractFunctionExecutable {
+        private List<Variable> _list;
+
+        private JoinFunction(List<Variable> list) {
+            _list = list;
+        }
+
+        @Override
+        protected int getDuration() {
+            return getLinearDuration(_list.size());
+        }
+
+        @Override
+        public Collection<String> getParameterNames() {
+            return Arrays.asList("separator");
+        }
+
+        @Override
+        protected Object executeFunction(int line, Map<String, Variable> parameters) throws ExecutionException {
+            final Variable separatorVar = parameters.get("separator");
+            String separator;
+            if (separatorVar.getType() == Variable.Type.NULL)
+                separator = "";
+            else if (separatorVar.getType() == Variable.Type.STRING)
+                separator = (String) separatorVar.getValue();
+            else
+                throw new ExecutionException(line, "Expected STRING or NULL in join()");
+
+            StringBuilder result = new StringBuilder();
+            final int size = _list.size();
+            for (int i = 0; i < size; i++) {
+                if (i > 0)
+                    result.append(separator);
+                result.append(ValueOperations.convertToString(_list.get(i)));
+            }
+            return result.toString();
+        }
+    }
+
+    /**
+     * Sorts the list in place, either by the values of its elements, or by the values of the specified property of
+     * its elements (maps). The values sorted by have to be all numbers or all strings. The sort is stable.
+     */
+    private static class SortFunction extends AbstractFunctionExecutable {
+        private List<Variable> _list;
+
+        private SortFunction(List<Variable> list) {
+            _list = list;
+        }
+
+        @Override
+        protected int getDuration() {
+            final int size = _list.size();
+            // n * log2(n) comparisons
+            return 100 + DURATION_PER_ELEMENT * size * (32 - Integer.numberOfLeadingZeros(size));
+        }
+
+        @Override
+        public Collection<String> getParameterNames() {
+            return Arrays.asList("key");
+        }
+
+        @Override
+        protected Object executeFunction(int line, Map<String, Variable> parameters) throws ExecutionException {
+            final Variable keyVar = parameters.get("key");
+            String key;
+            if (keyVar.getType() == Variable.Type.NULL)
+                key = null;
+            else if (keyVar.getType() == Variable.Type.STRING)
+                key = (String) keyVar.getValue();
+            else
+                throw new ExecutionException(line, "Expected STRING or NULL key in sort()");
+
+            final int size = _list.size();
+            // Elements are reordered, not copied, as memory accounting counts the places each variable is stored in
+            final Variable[] values = new Variable[size];
+            final Variable[] sortValues = new Variable[size];
+            for (int i = 0; i < size; i++) {
+                values[i] = _list.get(i);
+                sortValues[i] = (key == null) ? values[i] : getSortValue(line, values[i], key);
+                final Variable.Type type = sortValues[i].getType();
+                if (type != Variable.Type.NUMBER && type != Variable.Type.STRING)
+                    throw new ExecutionException(line, "Unable to sort values of type " + type);
+                if (type != sortValues[0].getType())
+                    throw new ExecutionException(line, "Unable to sort values of types " + sortValues[0].getType() + " and " + type);
+            }
+
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++)
+                order[i] = i;
+            Arrays.sort(order,
+                    new Comparator<Integer>() {
+                        @Override
+                        public int compare(Integer o1, Integer o2) {
+                            return ValueOperations.compareOrder(sortValues[o1], sortValues[o2]);
+                        }
+                    });
+
+            for (int i = 0; i < size; i++)
+                _list.set(i, values[order[i]]);
             return null;
         }
+
+        private static Variable getSortValue(int line, Variable element, String key) throws ExecutionException {
+            if (element.getType() != Variable.Type.MAP)
+                throw new ExecutionException(line, "Expected MAP elements in sort() with key");
+            final Variable value = ((Map<String, Variable>) element.getValue()).get(key);
+            if (value == null)
+                return new Variable(null);
+            return value;
+        }
     }
 
     private static class SizeFunction extends AbstractFunctionExecutable {
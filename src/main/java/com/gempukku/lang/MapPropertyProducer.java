@@ -2,6 +2,7 @@ package com.gempukku.lang;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 public class MapPropertyProducer implements PropertyProducer {
@@ -10,9 +11,65 @@ public class MapPropertyProducer implements PropertyProducer {
         Map<String, Variable> map = (Map<String, Variable>) object.getValue();
         if (property.equals("size"))
             return new Variable(new MapSizeFunction(map));
+        else if (property.equals("keys"))
+            return new Variable(new MapKeysFunction(map));
+        else if (property.equals("values"))
+            return new Variable(new MapValuesFunction(map));
         return new Variable(null);
     }
 
+    private static class MapKeysFunction extends AbstractFunctionExecutable {
+        private Map<String, Variable> _map;
+
+        private MapKeysFunction(Map<String, Variable> map) {
+            _map = map;
+        }
+
+        @Override
+        protected Object executeFunction(int line, Map<String, Variable> parameters) throws ExecutionException {
+            List<Variable> result = new VariableList(_map.size());
+            for (String key : _map.keySet())
+                result.add(new Variable(key));
+            return result;
+        }
+
+        @Override
+        protected int getDuration() {
+            return ListPropertyProducer.getLinearDuration(_map.size());
+        }
+
+        @Override
+        public Collection<String> getParameterNames() {
+            return Collections.emptySet();
+        }
+    }
+
+    private static class MapValuesFunction extends AbstractFunctionExecutable {
+        private Map<String, Variable> _map;
+
+        private MapValuesFunction(Map<String, Variable> map) {
+            _map = map;
+        }
+
+        @Override
+        protected Object executeFunction(int line, Map<String, Variable> parameters) throws ExecutionException {
+            List<Variable> result = new VariableList(_map.size());
+            for (Variable value : _map.values())
+                result.add(new Variable(value.getValue()));
+            return result;
+        }
+
+        @Override
+        protected int getDuration() {
+            return ListPropertyProducer.getLinearDuration(_map.size());
+        }
+
+        @Override
+        public Collection<String> getParameterNames() {
+            return Collections.emptySet();
+        }
+    }
+
     private static class MapSizeFunction extends AbstractFunctionExecutable {
         private Map<String, Variable> _map;
 
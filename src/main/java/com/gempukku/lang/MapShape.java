@@ -0,0 +1,58 @@
+package com.gempukku.lang;
+
+import java.util.Collection;
+
+/**
+ * Fixed set of keys shared by all ShapedMaps created for the same kind of record, i.e. a native function result, or
+ * a map literal in a program. Keys are interned, so looking up a key that is a constant of the program, or of the
+ * native code, takes a comparison of references only.
+ */
+public final class MapShape {
+    private final String[] _keys;
+
+    private MapShape(String[] keys) {
+        _keys = keys;
+    }
+
+    public static MapShape of(String... keys) {
+        String[] internedKeys = new String[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            String key = keys[i].intern();
+            for (int j = 0; j < i; j++) {
+                if (internedKeys[j] == key)
+                    throw new IllegalArgumentException("Duplicate key in map shape: " + key);
+            }
+            internedKeys[i] = key;
+        }
+        return new MapShape(internedKeys);
+    }
+
+    public static MapShape of(Collection<String> keys) {
+        return of(keys.toArray(new String[keys.size()]));
+    }
+
+    public int size() {
+        return _keys.length;
+    }
+
+    public String getKey(int index) {
+        return _keys[index];
+    }
+
+    /**
+     * @return Index of the value for the key in the ShapedMap, or -1 if the key is not part of this shape.
+     */
+    public int indexOf(Object key) {
+        for (int i = 0; i < _keys.length; i++) {
+            if (_keys[i] == key)
+                return i;
+        }
+        if (key instanceof String) {
+            for (int i = 0; i < _keys.length; i++) {
+                if (_keys[i].equals(key))
+                    return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,38 @@
+package com.gempukku.lang;
+
+/**
+ * Function implemented in Java. When called from a program, it gets the values of the parameters in an array and its
+ * execution runs in the execution group of the caller, so no CallContext is created for the call.
+ */
+public interface NativeFunctionExecutable extends FunctionExecutable {
+    /**
+     * Creates an execution of a call of this function. The execution has to set the result of the function as the
+     * context value, setting a return value would return from the calling function instead.
+     *
+     * @param line             Line where the call to the function was made.
+     * @param executionContext Context the function is executed in.
+     * @param parameters       Values of the parameters, in order of getParameterNames, parameters not passed by the
+     *                         caller have NULL values.
+     * @return Execution of the call.
+     */
+    Execution createNativeExecution(int line, ExecutionContext executionContext, Variable[] parameters);
+
+    /**
+     * Creates an execution of the call with the parameters defined in the call context, that sets the result of the
+     * function as the return value, as other functions do.
+     */
+    @Override
+    default Execution createExecution(int line, ExecutionContext executionContext, CallContext callContext) {
+        Variable[] parameters = new Variable[getParameterNames().size()];
+        int i = 0;
+        for (String parameterName : getParameterNames()) {
+            try {
+                parameters[i] = callContext.getVariableValue(parameterName);
+            } catch (ExecutionException exp) {
+                parameters[i] = new Variable(null);
+            }
+            i++;
+        }
+        return new NativeResultReturningExecution(createNativeExecution(line, executionContext, parameters));
+    }
+}
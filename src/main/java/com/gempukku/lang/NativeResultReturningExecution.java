@@ -0,0 +1,25 @@
+package com.gempukku.lang;
+
+/**
+ * Execution of a native function, that returns the result the function set as the context value.
+ */
+class NativeResultReturningExecution implements Execution {
+    private Execution _execution;
+
+    NativeResultReturningExecution(Execution execution) {
+        _execution = execution;
+    }
+
+    @Override
+    public boolean hasNextExecution(ExecutionContext executionContext) {
+        return _execution.hasNextExecution(executionContext);
+    }
+
+    @Override
+    public ExecutionProgress executeNextStatement(ExecutionContext executionContext, ExecutionCostConfiguration configuration) throws ExecutionException {
+        final ExecutionProgress result = _execution.executeNextStatement(executionContext, configuration);
+        if (!_execution.hasNextExecution(executionContext))
+            executionContext.setReturnValue(executionContext.getContextValue());
+        return result;
+    }
+}
@@ -19,6 +19,9 @@ public class Operator {
     public static final Operator ADD = Operator.createBinaryLeftAssociative(1, 4);
     public static final Operator SUBTRACT = Operator.createBinaryLeftAssociative(1, 4);
 
+    public static final Operator SHIFT_LEFT = Operator.createBinaryLeftAssociative(2, 5);
+    public static final Operator SHIFT_RIGHT = Operator.createBinaryLeftAssociative(2, 5);
+
     public static final Operator GREATER_OR_EQUAL = Operator.createBinaryLeftAssociative(2, 6);
     public static final Operator GREATER = Operator.createBinaryLeftAssociative(1, 6);
     public static final Operator LESS_OR_EQUAL = Operator.createBinaryLeftAssociative(2, 6);
@@ -27,6 +30,12 @@ public class Operator {
     public static final Operator EQUALS = Operator.createBinaryLeftAssociative(2, 7);
     public static final Operator NOT_EQUALS = Operator.createBinaryLeftAssociative(2, 7);
 
+    public static final Operator BITWISE_AND = Operator.createBinaryLeftAssociative(1, 8);
+
+    public static final Operator BITWISE_XOR = Operator.createBinaryLeftAssociative(1, 9);
+
+    public static final Operator BITWISE_OR = Operator.createBinaryLeftAssociative(1, 10);
+
     public static final Operator AND = Operator.createBinaryLeftAssociative(2, 11);
 
     public static final Operator OR = Operator.createBinaryLeftAssociative(2, 12);
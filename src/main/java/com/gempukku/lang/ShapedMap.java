@@ -0,0 +1,166 @@
+package com.gempukku.lang;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Value of a MAP variable with keys known in advance. Values are kept in an array indexed by the position of the key
+ * in the shape, so the map takes a fraction of memory of a HashMap and finding a value does not require hashing the
+ * key. Keys of the shape may be missing from the map. Once a key outside of the shape is put into the map, the
+ * map converts itself into a HashMap-backed one.
+ */
+public class ShapedMap extends AbstractMap<String, Variable> {
+    private MapShape _shape;
+    private Variable[] _values;
+    private int _size;
+
+    private Map<String, Variable> _dictionary;
+
+    public ShapedMap(MapShape shape) {
+        _shape = shape;
+        _values = new Variable[shape.size()];
+    }
+
+    /**
+     * Creates a map with the values given in order of the keys of the shape. The array is used by the map directly,
+     * all of its elements have to be non-null.
+     */
+    public ShapedMap(MapShape shape, Variable[] values) {
+        _shape = shape;
+        _values = values;
+        _size = values.length;
+    }
+
+    @Override
+    public Variable get(Object key) {
+        if (_dictionary != null)
+            return _dictionary.get(key);
+        int index = _shape.indexOf(key);
+        if (index < 0)
+            return null;
+        return _values[index];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public Variable put(String key, Variable value) {
+        if (value == null)
+            throw new NullPointerException("Null values are not supported");
+        if (_dictionary != null)
+            return _dictionary.put(key, value);
+        int index = _shape.indexOf(key);
+        if (index < 0) {
+            convertToDictionary();
+            return _dictionary.put(key, value);
+        }
+        Variable oldValue = _values[index];
+        if (oldValue == null)
+            _size++;
+        _values[index] = value;
+        return oldValue;
+    }
+
+    @Override
+    public Variable remove(Object key) {
+        if (_dictionary != null)
+            return _dictionary.remove(key);
+        int index = _shape.indexOf(key);
+        if (index < 0)
+            return null;
+        Variable oldValue = _values[index];
+        if (oldValue != null) {
+            _values[index] = null;
+            _size--;
+        }
+        return oldValue;
+    }
+
+    @Override
+    public int size() {
+        if (_dictionary != null)
+            return _dictionary.size();
+        return _size;
+    }
+
+    @Override
+    public void clear() {
+        if (_dictionary != null) {
+            _dictionary.clear();
+        } else {
+            for (int i = 0; i < _values.length; i++)
+                _values[i] = null;
+            _size = 0;
+        }
+    }
+
+    @Override
+    public Set<Entry<String, Variable>> entrySet() {
+        return new AbstractSet<Entry<String, Variable>>() {
+            @Override
+            public Iterator<Entry<String, Variable>> iterator() {
+                if (_dictionary != null)
+                    return _dictionary.entrySet().iterator();
+                return new ShapedEntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return ShapedMap.this.size();
+            }
+        };
+    }
+
+    private void convertToDictionary() {
+        Map<String, Variable> dictionary = new HashMap<String, Variable>();
+        for (int i = 0; i < _values.length; i++) {
+            if (_values[i] != null)
+                dictionary.put(_shape.getKey(i), _values[i]);
+        }
+        _dictionary = dictionary;
+        _values = null;
+        _size = 0;
+    }
+
+    private class ShapedEntryIterator implements Iterator<Entry<String, Variable>> {
+        private int _nextIndex = findFrom(0);
+        private int _lastIndex = -1;
+
+        private int findFrom(int index) {
+            while (index < _values.length && _values[index] == null)
+                index++;
+            return index;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return _nextIndex < _values.length;
+        }
+
+        @Override
+        public Entry<String, Variable> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            _lastIndex = _nextIndex;
+            _nextIndex = findFrom(_nextIndex + 1);
+            return new SimpleEntry<String, Variable>(_shape.getKey(_lastIndex), _values[_lastIndex]);
+        }
+
+        @Override
+        public void remove() {
+            if (_lastIndex < 0)
+                throw new IllegalStateException();
+            _values[_lastIndex] = null;
+            _size--;
+            _lastIndex = -1;
+        }
+    }
+}
@@ -2,18 +2,110 @@ package com.gempukku.lang;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 public class StringPropertyProducer implements PropertyProducer {
+    // Number of compiled regular expressions kept, programs usually use only a few patterns, each in a loop
+    private static final int PATTERN_CACHE_SIZE = 32;
+    // Number of characters a regular expression may read from the text per character of the text, limits backtracking
+    private static final int REGEX_READS_PER_CHARACTER = 100;
+
+    private Map<String, Pattern> _patternCache = new LinkedHashMap<String, Pattern>(PATTERN_CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+            return size() > PATTERN_CACHE_SIZE;
+        }
+    };
+
     @Override
     public Variable exposePropertyFor(ExecutionContext context, Variable object, String property) throws ExecutionException {
         String text = (String) object.getValue();
         if (property.equals("split"))
             return new Variable(new SplitFunctionExecutable(text));
+        else if (property.equals("length"))
+            return new Variable(new LengthFunction(text));
+        else if (property.equals("charAt"))
+            return new Variable(new CharAtFunction(text));
+        else if (property.equals("substring"))
+            return new Variable(new SubstringFunction(text));
+        else if (property.equals("indexOf"))
+            return new Variable(new IndexOfFunction(text));
+        else if (property.equals("startsWith"))
+            return new Variable(new StartsWithFunction(text));
+        else if (property.equals("replace"))
+            return new Variable(new ReplaceFunction(text));
+        else if (property.equals("toUpperCase"))
+            return new Variable(new ChangeCaseFunction(text, true));
+        else if (property.equals("toLowerCase"))
+            return new Variable(new ChangeCaseFunction(text, false));
+        else if (property.equals("trim"))
+            return new Variable(new TrimFunction(text));
+        else if (property.equals("matches"))
+            return new Variable(new MatchesFunction(this, text));
+        else if (property.equals("find"))
+            return new Variable(new FindFunction(this, text));
         return new Variable(null);
     }
 
+    private Pattern getPattern(int line, Variable regexVar, String functionName) throws ExecutionException {
+        if (regexVar.getType() != Variable.Type.STRING)
+            throw new ExecutionException(line, "Expected STRING in " + functionName + "()");
+        final String regex = (String) regexVar.getValue();
+        Pattern pattern = _patternCache.get(regex);
+        if (pattern == null) {
+            try {
+                pattern = Pattern.compile(regex);
+            } catch (PatternSyntaxException exp) {
+                throw new ExecutionException(line, "Invalid regular expression in " + functionName + "() - " + exp.getDescription());
+            }
+            _patternCache.put(regex, pattern);
+        }
+        return pattern;
+    }
+
+    private static String getString(int line, Map<String, Variable> parameters, String name, String functionName) throws ExecutionException {
+        final Variable variable = parameters.get(name);
+        if (variable.getType() != Variable.Type.STRING)
+            throw new ExecutionException(line, "Expected STRING in " + functionName + "()");
+        return (String) variable.getValue();
+    }
+
+    /**
+     * @return Index passed in the parameter, or defaultValue, if the parameter was not passed.
+     */
+    private static int getIndex(int line, Map<String, Variable> parameters, String name, int defaultValue, String functionName) throws ExecutionException {
+        final Variable variable = parameters.get(name);
+        if (variable.getType() == Variable.Type.NULL)
+            return defaultValue;
+        if (variable.getType() != Variable.Type.NUMBER)
+            throw new ExecutionException(line, "Expected NUMBER " + name + " in " + functionName + "()");
+        return (int) variable.getNumber();
+    }
+
+    /**
+     * Function of a String, that has a duration proportional to the length of the String.
+     */
+    private abstract static class StringFunction extends AbstractFunctionExecutable {
+        protected String _text;
+
+        private StringFunction(String text) {
+            _text = text;
+        }
+
+        @Override
+        protected int getDuration() {
+            return 100 + _text.length();
+        }
+    }
+
     private static class SplitFunctionExecutable extends AbstractFunctionExecutable {
         private String _text;
 
@@ -38,7 +130,7 @@ public class StringPropertyProducer implements PropertyProducer {
             if (limitVar.getType() == Variable.Type.NULL) {
                 limit = 0;
             } else if (limitVar.getType() == Variable.Type.NUMBER) {
-                limit = ((Number) limitVar.getValue()).intValue();
+                limit = (int) limitVar.getNumber();
             } else {
                 throw new ExecutionException(line, "Expected NUMBER or NULL in split()");
             }
@@ -58,4 +150,282 @@ public class StringPropertyProducer implements PropertyProducer {
             return result;
         }
     }
+
+    private static class LengthFunction extends StringFunction {
+        private LengthFunction(String text) {
+            super(text);
+        }
+
+        @Override
+        protected int getDuration() {
+            return 10;
+        }
+
+        @Override
+        public Collection<String> getParameterNames() {
+            return Collections.emptySet();
+        }
+
+        @Override
+        protected Object executeFunction(int line, Map<String, Variable> parameters) throws ExecutionException {
+            return _text.length();
+        }
+    }
+
+    private static class CharAtFunction extends StringFunction {
+        private CharAtFunction(String text) {
+            super(text);
+        }
+
+        @Override
+        protected int getDuration() {
+            return 10;
+        }
+
+        @Override
+        public Collection<String> getParameterNames() {
+            return Arrays.asList("index");
+        }
+
+        @Override
+        protected Object executeFunction(int line, Map<String, Variable> parameters) throws ExecutionException {
+            final int index = getIndex(line, parameters, "index", -1, "charAt");
+            if (index < 0 || index >= _text.length())
+                throw new ExecutionException(line, "Index out of bounds in charAt()");
+            return String.valueOf(_text.charAt(index));
+        }
+    }
+
+    private static class SubstringFunction extends StringFunction {
+        private SubstringFunction(String text) {
+            super(text);
+        }
+
+        @Override
+        public Collection<String> getParameterNames() {
+            return Arrays.asList("start", "end");
+        }
+
+        @Override
+        protected Object executeFunction(int line, Map<String, Variable> parameters) throws ExecutionException {
+            final int start = getIndex(line, parameters, "start", 0, "substring");
+            final int end = getIndex(line, parameters, "end", _text.length(), "substring");
+            if (start < 0 || end > _text.length() || start > end)
+                throw new ExecutionException(line, "Index out of bounds in substring()");
+            return _text.substring(start, end);
+        }
+    }
+
+    private static class IndexOfFunction extends StringFunction {
+        private IndexOfFunction(String text) {
+            super(text);
+        }
+
+        @Override
+        public Collection<String> getParameterNames() {
+            return Arrays.asList("text", "start");
+        }
+
+        @Override
+        protected Object executeFunction(int line, Map<String, Variable> parameters) throws ExecutionException {
+            final String text = getString(line, parameters, "text", "indexOf");
+            return _text.indexOf(text, getIndex(line, parameters, "start", 0, "indexOf"));
+        }
+    }
+
+    private static class StartsWithFunction extends StringFunction {
+        private StartsWithFunction(String text) {
+            super(text);
+        }
+
+        @Override
+        public Collection<String> getParameterNames() {
+            return Arrays.asList("prefix");
+        }
+
+        @Override
+        protected Object executeFunction(int line, Map<String, Variable> parameters) throws ExecutionException {
+            return _text.startsWith(getString(line, parameters, "prefix", "startsWith"));
+        }
+    }
+
+    private static class ReplaceFunction extends StringFunction {
+        private ReplaceFunction(String text) {
+            super(text);
+        }
+
+        @Override
+        public Collection<String> getParameterNames() {
+            return Arrays.asList("target", "replacement");
+        }
+
+        @Override
+        protected Object executeFunction(int line, Map<String, Variable> parameters) throws ExecutionException {
+            final String target = getString(line, parameters, "target", "replace");
+            final String replacement = getString(line, parameters, "replacement", "replace");
+            if (target.isEmpty())
+                throw new ExecutionException(line, "Empty target in replace()");
+            return _text.replace(target, replacement);
+        }
+    }
+
+    private static class ChangeCaseFunction extends StringFunction {
+        private boolean _upperCase;
+
+        private ChangeCaseFunction(String text, boolean upperCase) {
+            super(text);
+            _upperCase = upperCase;
+        }
+
+        @Override
+        public Collection<String> getParameterNames() {
+            return Collections.emptySet();
+        }
+
+        @Override
+        protected Object executeFunction(int line, Map<String, Variable> parameters) throws ExecutionException {
+            return _upperCase ? _text.toUpperCase(Locale.ROOT) : _text.toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private static class TrimFunction extends StringFunction {
+        private TrimFunction(String text) {
+            super(text);
+        }
+
+        @Override
+        public Collection<String> getParameterNames() {
+            return Collections.emptySet();
+        }
+
+        @Override
+        protected Object executeFunction(int line, Map<String, Variable> parameters) throws ExecutionException {
+            return _text.trim();
+        }
+    }
+
+    /**
+     * Function matching the String against a regular expression. The patterns are compiled once and cached, the number
+     * of characters read during matching is limited, so that patterns with catastrophic backtracking fail the program,
+     * rather than stalling the computer.
+     */
+    private abstract static class RegexFunction extends StringFunction {
+        private StringPropertyProducer _producer;
+
+        private RegexFunction(StringPropertyProducer producer, String text) {
+            super(text);
+            _producer = producer;
+        }
+
+        @Override
+        protected int getDuration() {
+            return 100 + 2 * _text.length();
+        }
+
+        @Override
+        public Collection<String> getParameterNames() {
+            return Arrays.asList("regex");
+        }
+
+        @Override
+        protected Object executeFunction(int line, Map<String, Variable> parameters) throws ExecutionException {
+            final String functionName = getFunctionName();
+            final Pattern pattern = _producer.getPattern(line, parameters.get("regex"), functionName);
+            final Matcher matcher = pattern.matcher(new LimitedCharSequence(_text, REGEX_READS_PER_CHARACTER * (_text.length() + 1)));
+            try {
+                return match(matcher);
+            } catch (ReadLimitExceededException exp) {
+                throw new ExecutionException(line, "Regular expression too complex in " + functionName + "()");
+            }
+        }
+
+        protected abstract String getFunctionName();
+
+        protected abstract Object match(Matcher matcher);
+    }
+
+    private static class MatchesFunction extends RegexFunction {
+        private MatchesFunction(StringPropertyProducer producer, String text) {
+            super(producer, text);
+        }
+
+        @Override
+        protected String getFunctionName() {
+            return "matches";
+        }
+
+        @Override
+        protected Object match(Matcher matcher) {
+            return matcher.matches();
+        }
+    }
+
+    /**
+     * Finds the first match of the regular expression, returns the list of the matched text followed by the groups
+     * of the match, or null if there is no match.
+     */
+    private static class FindFunction extends RegexFunction {
+        private FindFunction(StringPropertyProducer producer, String text) {
+            super(producer, text);
+        }
+
+        @Override
+        protected String getFunctionName() {
+            return "find";
+        }
+
+        @Override
+        protected Object match(Matcher matcher) {
+            if (!matcher.find())
+                return null;
+            List<Variable> result = new VariableList(matcher.groupCount() + 1);
+            for (int i = 0; i <= matcher.groupCount(); i++)
+                result.add(new Variable(matcher.group(i)));
+            return result;
+        }
+    }
+
+    private static class LimitedCharSequence implements CharSequence {
+        private String _text;
+        private int[] _readsLeft;
+
+        private LimitedCharSequence(String text, int readLimit) {
+            this(text, new int[]{readLimit});
+        }
+
+        private LimitedCharSequence(String text, int[] readsLeft) {
+            _text = text;
+            _readsLeft = readsLeft;
+        }
+
+        @Override
+        public int length() {
+            return _text.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (--_readsLeft[0] < 0)
+                throw new ReadLimitExceededException();
+            return _text.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new LimitedCharSequence(_text.substring(start, end), _readsLeft);
+        }
+
+        @Override
+        public String toString() {
+            return _text;
+        }
+    }
+
+    private static class ReadLimitExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private ReadLimitExceededException() {
+            super(null, null, false, false);
+        }
+    }
 }
@@ -0,0 +1,49 @@
+package com.gempukku.lang;
+
+/**
+ * Value of a STRING variable built by concatenation. The text appended is kept along with the value it was appended
+ * to, and the actual String is created only once its content is requested, so appending to a string repeatedly
+ * takes linear, instead of quadratic, time.
+ */
+public final class StringRope {
+    // Either a String or a StringRope, null once flattened
+    private Object _prefix;
+    private String _suffix;
+    private int _length;
+    private String _flattened;
+
+    StringRope(Object prefix, int prefixLength, String suffix) {
+        _prefix = prefix;
+        _suffix = suffix;
+        _length = prefixLength + suffix.length();
+    }
+
+    public int length() {
+        return _length;
+    }
+
+    @Override
+    public String toString() {
+        if (_flattened == null) {
+            char[] chars = new char[_length];
+            int end = _length;
+            Object current = this;
+            while (current instanceof StringRope) {
+                StringRope rope = (StringRope) current;
+                if (rope._flattened != null) {
+                    current = rope._flattened;
+                } else {
+                    end -= rope._suffix.length();
+                    rope._suffix.getChars(0, rope._suffix.length(), chars, end);
+                    current = rope._prefix;
+                }
+            }
+            ((String) current).getChars(0, end, chars, 0);
+
+            _flattened = new String(chars);
+            _prefix = null;
+            _suffix = null;
+        }
+        return _flattened;
+    }
+}
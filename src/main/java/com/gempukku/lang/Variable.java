@@ -6,20 +6,110 @@ import java.util.Map;
 public class Variable {
     public enum Type {NULL, STRING, NUMBER, BOOLEAN, FUNCTION, LIST, MAP, OBJECT, CUSTOM_OBJECT}
 
+    /**
+     * Minimum length of a string, that is appended to via StringRope, shorter strings are copied.
+     */
+    private static final int ROPE_THRESHOLD = 64;
+
     private Object _value;
+    // For integer NUMBER values holds the nearest float, so getNumber() works for both representations
+    private float _number;
+    private long _integer;
+    private boolean _integral;
     private Type _type;
+    // Number of places reachable by the program the variable is stored in, counted by ExecutionContext
+    private int _references;
 
     public Variable(Object value) {
         setValue(value);
     }
 
+    // Used by the factory methods creating unboxed NUMBER variables
+    Variable() {
+    }
+
+    /**
+     * Creates a NUMBER variable, without boxing the value.
+     */
+    public static Variable createNumber(float number) {
+        Variable variable = new Variable();
+        variable.setNumber(number);
+        return variable;
+    }
+
+    /**
+     * Creates an integer NUMBER variable, without boxing the value.
+     */
+    public static Variable createInteger(long integer) {
+        Variable variable = new Variable();
+        variable.setInteger(integer);
+        return variable;
+    }
+
+    /**
+     * Sets a NUMBER value, without boxing it. The boxed value is created only if requested via getValue().
+     */
+    public void setNumber(float number) {
+        _value = null;
+        _number = number;
+        _integral = false;
+        _type = Type.NUMBER;
+    }
+
+    /**
+     * Sets an integer NUMBER value, without boxing it. Integer values are exact in the whole 64-bit range.
+     */
+    public void setInteger(long integer) {
+        _value = null;
+        _integer = integer;
+        _number = integer;
+        _integral = true;
+        _type = Type.NUMBER;
+    }
+
+    /**
+     * Returns the value of a NUMBER variable, without boxing it. Integer values are rounded to the nearest float.
+     */
+    public float getNumber() {
+        return _number;
+    }
+
+    /**
+     * Returns true, if this is a NUMBER variable holding an integer value.
+     */
+    public boolean isInteger() {
+        return _integral && _type == Type.NUMBER;
+    }
+
+    /**
+     * Returns the value of an integer NUMBER variable, without boxing it.
+     */
+    public long getInteger() {
+        return _integer;
+    }
+
+    /**
+     * Sets the value and type of this variable to the ones of the other variable.
+     */
+    public void setValue(Variable variable) {
+        _type = variable._type;
+        _value = variable._value;
+        _number = variable._number;
+        _integer = variable._integer;
+        _integral = variable._integral;
+    }
+
     public void setValue(Object value) {
         _value = value;
         if (value == null) {
             _type = Type.NULL;
-        } else if (value instanceof String) {
+        } else if (value instanceof String || value instanceof StringRope) {
             _type = Type.STRING;
         } else if (value instanceof Number) {
+            _integral = value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+            if (_integral)
+                _integer = ((Number) value).longValue();
+            _number = ((Number) value).floatValue();
             _type = Type.NUMBER;
         } else if (value instanceof Map) {
             _type = Type.MAP;
@@ -37,31 +127,80 @@ public class Variable {
             throw new UnsupportedOperationException("Unknown type of variable value: " + value.getClass().getSimpleName());
     }
 
+    int getReferences() {
+        return _references;
+    }
+
+    void setReferences(int references) {
+        _references = references;
+    }
+
     public Type getType() {
         return _type;
     }
 
     public Object getValue() {
+        if (_value == null && _type == Type.NUMBER) {
+            if (_integral)
+                _value = _integer;
+            else
+                _value = _number;
+        } else if (_value instanceof StringRope)
+            _value = _value.toString();
         return _value;
     }
 
+    /**
+     * Returns the length of a STRING value, without creating the String, if it was built by concatenation.
+     */
+    public int getStringLength() {
+        if (_value instanceof StringRope)
+            return ((StringRope) _value).length();
+        return ((String) _value).length();
+    }
+
+    /**
+     * Creates a STRING variable with the text appended to the value of this STRING variable. Long values are not
+     * copied, see StringRope.
+     */
+    public Variable appendString(String text) {
+        final int length = getStringLength();
+        if (length < ROPE_THRESHOLD)
+            return new Variable((String) getValue() + text);
+        return new Variable(new StringRope(_value, length, text));
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
+        if (!(o instanceof Variable)) return false;
 
         Variable variable = (Variable) o;
 
-        if (_type != variable._type) return false;
-        if (_value != null ? !_value.equals(variable._value) : variable._value != null) return false;
+        if (getType() != variable.getType()) return false;
+        if (getType() == Type.NUMBER) {
+            // Integer and float values are equal, if they represent the same number
+            if (isInteger() && variable.isInteger())
+                return getInteger() == variable.getInteger();
+            return Double.valueOf(getDouble()).equals(variable.getDouble());
+        }
+        final Object value = getValue();
+        final Object otherValue = variable.getValue();
+        if (value != null ? !value.equals(otherValue) : otherValue != null) return false;
 
         return true;
     }
 
+    private double getDouble() {
+        return isInteger() ? getInteger() : getNumber();
+    }
+
     @Override
     public int hashCode() {
-        int result = _value != null ? _value.hashCode() : 0;
-        result = 31 * result + (_type != null ? _type.hashCode() : 0);
+        final Type type = getType();
+        final Object value = (type == Type.NUMBER) ? Double.valueOf(getDouble()) : getValue();
+        int result = value != null ? value.hashCode() : 0;
+        result = 31 * result + (type != null ? type.hashCode() : 0);
         return result;
     }
 }
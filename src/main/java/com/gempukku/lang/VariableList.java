@@ -0,0 +1,324 @@
+package com.gempukku.lang;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Value of a LIST variable created by a program. While all elements of the list are integer numbers, they are stored
+ * in a long array, while all of them are float numbers, in a float array. A list of both integers and floats stores
+ * the bits of the floats in the long array and marks them in a boolean array, so both stay exact. Once an element of
+ * another type is stored, the list switches to an array of variables.
+ * <p/>
+ * Elements of a list of numbers do not exist as variables, get() returns a variable holding the value of the element.
+ * An element that is assigned to by a program is accessed via getElementVariable(), which returns a variable storing
+ * the value assigned to it back into the list. Until then the list keeps track of the position of the element.
+ */
+public class VariableList extends AbstractList<Variable> implements RandomAccess {
+    private long[] _integers;
+    private float[] _numbers;
+    // Marks the elements of the long array holding bits of a float, null while all of them are integers
+    private boolean[] _floats;
+    private Variable[] _elements;
+    private int _size;
+
+    // Variables returned by getElementVariable() for a list of numbers, that have not been assigned to yet
+    private ElementVariable[] _pendingVariables;
+    private int _pendingCount;
+
+    // Set while the list is reachable by the program, variables created for its elements are then counted as stored
+    // in it, see ExecutionContext
+    private boolean _reachable;
+
+    public VariableList() {
+        this(10);
+    }
+
+    public VariableList(int initialCapacity) {
+        _integers = new long[initialCapacity];
+    }
+
+    /**
+     * Returns the value of the element. The variable returned must not be assigned to, use getElementVariable() to
+     * assign to the element.
+     */
+    @Override
+    public Variable get(int index) {
+        checkIndex(index);
+        if (_elements != null)
+            return _elements[index];
+        return createElementVariable(index);
+    }
+
+    /**
+     * Returns the variable of the element for an assignment, assigning to it changes the element. A value assigned
+     * after the element has been removed from the list is not stored in the list. For a list of numbers the variable
+     * is not kept by the list, it stores only the first value assigned.
+     */
+    public Variable getElementVariable(int index) {
+        checkIndex(index);
+        if (_elements != null)
+            return _elements[index];
+        final ElementVariable variable = new ElementVariable(this, index);
+        if (_pendingVariables == null)
+            _pendingVariables = new ElementVariable[2];
+        else if (_pendingCount == _pendingVariables.length)
+            _pendingVariables = Arrays.copyOf(_pendingVariables, _pendingCount * 2);
+        _pendingVariables[_pendingCount++] = variable;
+        return variable;
+    }
+
+    void setReachable(boolean reachable) {
+        _reachable = reachable;
+    }
+
+    /**
+     * Returns true, if the elements are stored in an array of numbers, rather than as variables.
+     */
+    boolean isPacked() {
+        return _elements == null;
+    }
+
+    @Override
+    public int size() {
+        return _size;
+    }
+
+    @Override
+    public Variable set(int index, Variable element) {
+        checkIndex(index);
+        if (_elements == null) {
+            final Variable previous = createElementVariable(index);
+            if (preparePacked(element)) {
+                storePacked(index, element);
+                return previous;
+            }
+            convertToVariables();
+        }
+        final Variable previous = _elements[index];
+        _elements[index] = element;
+        return previous;
+    }
+
+    @Override
+    public boolean add(Variable element) {
+        insert(_size, element);
+        return true;
+    }
+
+    @Override
+    public void add(int index, Variable element) {
+        if (index < 0 || index > _size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + _size);
+        insert(index, element);
+    }
+
+    @Override
+    public Variable remove(int index) {
+        checkIndex(index);
+        final Variable removed = get(index);
+        if (_elements == null) {
+            if (_integers != null) {
+                System.arraycopy(_integers, index + 1, _integers, index, _size - index - 1);
+                if (_floats != null)
+                    System.arraycopy(_floats, index + 1, _floats, index, _size - index - 1);
+            } else
+                System.arraycopy(_numbers, index + 1, _numbers, index, _size - index - 1);
+        } else {
+            System.arraycopy(_elements, index + 1, _elements, index, _size - index - 1);
+            _elements[_size - 1] = null;
+        }
+        for (int i = _pendingCount - 1; i >= 0; i--) {
+            final ElementVariable pending = _pendingVariables[i];
+            if (pending._index == index)
+                removePending(i);
+            else if (pending._index > index)
+                pending._index--;
+        }
+        _size--;
+        modCount++;
+        return removed;
+    }
+
+    private void insert(int index, Variable element) {
+        if (_elements == null && !preparePacked(element))
+            convertToVariables();
+        if (_elements == null) {
+            if (_size == capacity())
+                grow();
+            if (_integers != null) {
+                System.arraycopy(_integers, index, _integers, index + 1, _size - index);
+                if (_floats != null)
+                    System.arraycopy(_floats, index, _floats, index + 1, _size - index);
+            } else {
+                System.arraycopy(_numbers, index, _numbers, index + 1, _size - index);
+            }
+            storePacked(index, element);
+        } else {
+            if (_size == _elements.length)
+                _elements = Arrays.copyOf(_elements, newCapacity());
+            System.arraycopy(_elements, index, _elements, index + 1, _size - index);
+            _elements[index] = element;
+        }
+        for (int i = 0; i < _pendingCount; i++) {
+            if (_pendingVariables[i]._index >= index)
+                _pendingVariables[i]._index++;
+        }
+        _size++;
+        modCount++;
+    }
+
+    private int capacity() {
+        return (_integers != null) ? _integers.length : _numbers.length;
+    }
+
+    private void grow() {
+        final int newCapacity = newCapacity();
+        if (_integers != null) {
+            _integers = Arrays.copyOf(_integers, newCapacity);
+            if (_floats != null)
+                _floats = Arrays.copyOf(_floats, newCapacity);
+        } else {
+            _numbers = Arrays.copyOf(_numbers, newCapacity);
+        }
+    }
+
+    private int newCapacity() {
+        return Math.max(_size + (_size >> 1), 10);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= _size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + _size);
+    }
+
+    /**
+     * Prepares the array of numbers used by the list for storing the value, returns false if the value is not a number.
+     */
+    private boolean preparePacked(Variable value) {
+        if (value.getType() != Variable.Type.NUMBER)
+            return false;
+        if (value.isInteger()) {
+            if (_numbers != null)
+                convertToMixed();
+        } else if (_integers != null && _floats == null) {
+            // Empty list of integers can still become a list of floats
+            if (_size == 0) {
+                _numbers = new float[_integers.length];
+                _integers = null;
+            } else {
+                convertToMixed();
+            }
+        }
+        return true;
+    }
+
+    private void storePacked(int index, Variable value) {
+        if (_integers == null) {
+            _numbers[index] = value.getNumber();
+        } else if (value.isInteger()) {
+            _integers[index] = value.getInteger();
+            if (_floats != null)
+                _floats[index] = false;
+        } else {
+            _integers[index] = Float.floatToRawIntBits(value.getNumber());
+            _floats[index] = true;
+        }
+    }
+
+    private Variable createElementVariable(int index) {
+        if (_integers == null)
+            return Variable.createNumber(_numbers[index]);
+        if (_floats != null && _floats[index])
+            return Variable.createNumber(Float.intBitsToFloat((int) _integers[index]));
+        return Variable.createInteger(_integers[index]);
+    }
+
+    private void convertToMixed() {
+        if (_integers == null) {
+            _integers = new long[_numbers.length];
+            for (int i = 0; i < _size; i++)
+                _integers[i] = Float.floatToRawIntBits(_numbers[i]);
+            _floats = new boolean[_numbers.length];
+            Arrays.fill(_floats, 0, _size, true);
+            _numbers = null;
+        } else {
+            _floats = new boolean[_integers.length];
+        }
+    }
+
+    private void removePending(int position) {
+        System.arraycopy(_pendingVariables, position + 1, _pendingVariables, position, _pendingCount - position - 1);
+        _pendingVariables[--_pendingCount] = null;
+    }
+
+    private void storePending(ElementVariable variable) {
+        for (int i = 0; i < _pendingCount; i++) {
+            if (_pendingVariables[i] == variable) {
+                removePending(i);
+                // If the list has switched to an array of variables meanwhile, this becomes the variable of the element
+                set(variable._index, variable);
+                return;
+            }
+        }
+    }
+
+    private void convertToVariables() {
+        Variable[] elements = new Variable[Math.max(capacity(), 10)];
+        for (int i = 0; i < _size; i++) {
+            elements[i] = get(i);
+            if (_reachable)
+                elements[i].setReferences(1);
+        }
+        _elements = elements;
+        _integers = null;
+        _numbers = null;
+        _floats = null;
+    }
+
+    /**
+     * Variable of an element of a list of numbers, the value assigned to it is stored in the list. If the value cannot
+     * be stored in the array of numbers, the list switches to an array of variables and this becomes the variable of
+     * the element.
+     */
+    private static class ElementVariable extends Variable {
+        private VariableList _list;
+        private int _index;
+
+        private ElementVariable(VariableList list, int index) {
+            _list = list;
+            _index = index;
+            super.setValue(list.createElementVariable(index));
+            if (list._reachable)
+                setReferences(1);
+        }
+
+        @Override
+        public void setValue(Object value) {
+            super.setValue(value);
+            store();
+        }
+
+        @Override
+        public void setValue(Variable variable) {
+            super.setValue(variable);
+            store();
+        }
+
+        @Override
+        public void setNumber(float number) {
+            super.setNumber(number);
+            store();
+        }
+
+        @Override
+        public void setInteger(long integer) {
+            super.setInteger(integer);
+            store();
+        }
+
+        private void store() {
+            _list.storePending(this);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.gempukku.lang;
+
+/**
+ * Reference to a variable, resolved at parse time to a slot in one of the enclosing scopes. Variables predefined
+ * for the program are not known to the parser by slot, these are looked up by name.
+ */
+public final class VariableReference {
+    private final String _name;
+    private int _depth;
+    private final int _index;
+
+    private VariableReference(String name, int depth, int index) {
+        _name = name;
+        _depth = depth;
+        _index = index;
+    }
+
+    public static VariableReference slot(String name, int depth, int index) {
+        return new VariableReference(name, depth, index);
+    }
+
+    public static VariableReference predefined(String name) {
+        return new VariableReference(name, -1, -1);
+    }
+
+    /**
+     * Called by the parser, when one of the scopes between the reference and the variable turns out not to create
+     * a context at runtime.
+     */
+    public void removeEnclosingScope() {
+        _depth--;
+    }
+
+    public String getName() {
+        return _name;
+    }
+
+    public Variable getVariable(CallContext callContext) throws ExecutionException {
+        if (_depth < 0)
+            return callContext.getVariableValue(_name);
+        return callContext.getVariableValue(_name, _depth, _index);
+    }
+}
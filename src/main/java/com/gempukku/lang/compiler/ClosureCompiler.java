@@ -0,0 +1,369 @@
+package com.gempukku.lang.compiler;
+
+import com.gempukku.lang.CallContext;
+import com.gempukku.lang.ExecutionContext;
+import com.gempukku.lang.ExecutionCostConfiguration;
+import com.gempukku.lang.ExecutionException;
+import com.gempukku.lang.Operator;
+import com.gempukku.lang.Variable;
+import com.gempukku.lang.VariableReference;
+import com.gempukku.lang.execution.TypeSpecialization;
+import com.gempukku.lang.execution.ValueOperations;
+
+import java.util.LinkedList;
+
+/**
+ * Second tier of expression execution. Translates instructions of a hot CompiledExpression into a tree of
+ * ExpressionNode closures, that JVM is able to inline and compile to native code. Type feedback collected by the
+ * quickened instructions is carried over to the nodes, and the cost charged for each node is the same as the one
+ * charged for the instruction it was created from.
+ */
+final class ClosureCompiler {
+    private ClosureCompiler() {
+    }
+
+    static ExpressionNode compile(int[] opCodes, Object[] operands, int[] arguments, int[] lines, boolean[] nested,
+                                  ExecutionCostConfiguration configuration) {
+        final int nestedCost = configuration.getStackExecution() + configuration.getGetContextValue();
+
+        LinkedList<ExpressionNode> stack = new LinkedList<ExpressionNode>();
+        LinkedList<Integer> shortCircuits = new LinkedList<Integer>();
+        for (int pc = 0; pc < opCodes.length; pc++) {
+            final int opCode = opCodes[pc];
+            final int line = lines[pc];
+            final int cost = nested[pc] ? nestedCost : 0;
+            switch (opCode) {
+                case CompiledExpression.CONSTANT:
+                    stack.push(new ConstantNode(operands[pc], cost + configuration.getSetContextValue()));
+                    break;
+                case CompiledExpression.FOLDED_CONSTANT: {
+                    final FoldedConstant foldedConstant = (FoldedConstant) operands[pc];
+                    stack.push(new ConstantNode(foldedConstant.getValue(), cost + foldedConstant.getCost(configuration)));
+                    break;
+                }
+                case CompiledExpression.VARIABLE:
+                    stack.push(new VariableNode((VariableReference) operands[pc], cost + configuration.getSetContextValue()));
+                    break;
+                case CompiledExpression.ADD:
+                case CompiledExpression.ADD_NUMBERS:
+                case CompiledExpression.ADD_STRING:
+                case CompiledExpression.ADD_GENERIC: {
+                    final ExpressionNode right = stack.pop();
+                    final ExpressionNode left = stack.pop();
+                    stack.push(new AddNode(line, left, right, arguments[pc] != 0, getSpecialization(opCode),
+                            cost + configuration.getSumValues()));
+                    break;
+                }
+                case CompiledExpression.MATH:
+                case CompiledExpression.MATH_NUMBERS:
+                case CompiledExpression.MATH_GENERIC: {
+                    final ExpressionNode right = stack.pop();
+                    final ExpressionNode left = stack.pop();
+                    stack.push(new MathNode(line, left, (Operator) operands[pc], right, arguments[pc] != 0, getSpecialization(opCode),
+                            cost + configuration.getOtherMathOperation() + configuration.getSetContextValue()));
+                    break;
+                }
+                case CompiledExpression.COMPARE:
+                case CompiledExpression.COMPARE_NUMBERS:
+                case CompiledExpression.COMPARE_GENERIC: {
+                    final ExpressionNode right = stack.pop();
+                    final ExpressionNode left = stack.pop();
+                    stack.push(new ComparisonNode(left, (Operator) operands[pc], right, getSpecialization(opCode),
+                            cost + configuration.getCompareValues() + configuration.getSetContextValue()));
+                    break;
+                }
+                case CompiledExpression.NEGATE:
+                    stack.push(new NegateNode(line, stack.pop(), cost + configuration.getSetContextValue()));
+                    break;
+                case CompiledExpression.NEGATIVE:
+                    stack.push(new NegativeNode(line, stack.pop(), cost + configuration.getSetContextValue()));
+                    break;
+                case CompiledExpression.INCREMENT_DECREMENT:
+                    stack.push(new IncrementDecrementNode(line, stack.pop(), (arguments[pc] & CompiledExpression.INCREMENT_FLAG) != 0,
+                            (arguments[pc] & CompiledExpression.PRE_FLAG) != 0, cost + configuration.getSetContextValue()));
+                    break;
+                case CompiledExpression.CHECK_MAP_OR_LIST:
+                    // Validation is done by the MapAccessNode, between evaluating map and property
+                    break;
+                case CompiledExpression.MAP_ACCESS: {
+                    final ExpressionNode property = stack.pop();
+                    final ExpressionNode map = stack.pop();
+                    stack.push(new MapAccessNode(line, map, property, arguments[pc] != 0, cost + configuration.getSetContextValue()));
+                    break;
+                }
+                case CompiledExpression.LOGICAL_SHORT_CIRCUIT:
+                    shortCircuits.push(pc);
+                    break;
+                case CompiledExpression.LOGICAL_RESULT: {
+                    final ExpressionNode right = stack.pop();
+                    final ExpressionNode left = stack.pop();
+                    final int shortCircuit = shortCircuits.pop();
+                    final int shortCircuitCost = (nested[shortCircuit] ? nestedCost : 0) + configuration.getSetContextValue();
+                    stack.push(new LogicalNode(line, left, (Operator) operands[shortCircuit], right, shortCircuitCost,
+                            cost + configuration.getSetContextValue()));
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Unknown instruction " + opCode);
+            }
+        }
+        return stack.pop();
+    }
+
+    private static TypeSpecialization getSpecialization(int opCode) {
+        switch (opCode) {
+            case CompiledExpression.ADD_NUMBERS:
+            case CompiledExpression.MATH_NUMBERS:
+            case CompiledExpression.COMPARE_NUMBERS:
+                return new TypeSpecialization(TypeSpecialization.NUMBERS);
+            case CompiledExpression.ADD_STRING:
+                return new TypeSpecialization(TypeSpecialization.STRING);
+            case CompiledExpression.ADD_GENERIC:
+            case CompiledExpression.MATH_GENERIC:
+            case CompiledExpression.COMPARE_GENERIC:
+                return new TypeSpecialization(TypeSpecialization.GENERIC);
+            default:
+                return new TypeSpecialization(TypeSpecialization.UNINITIALIZED);
+        }
+    }
+
+    private static class ConstantNode implements ExpressionNode {
+        private Object _value;
+        private int _cost;
+
+        private ConstantNode(Object value, int cost) {
+            _value = value;
+            _cost = cost;
+        }
+
+        @Override
+        public Variable evaluate(ExecutionContext context, CallContext callContext, CostCounter costCounter) {
+            costCounter.cost += _cost;
+            return new Variable(_value);
+        }
+    }
+
+    private static class VariableNode implements ExpressionNode {
+        private VariableReference _variableReference;
+        private int _cost;
+
+        private VariableNode(VariableReference variableReference, int cost) {
+            _variableReference = variableReference;
+            _cost = cost;
+        }
+
+        @Override
+        public Variable evaluate(ExecutionContext context, CallContext callContext, CostCounter costCounter) throws ExecutionException {
+            costCounter.cost += _cost;
+            return _variableReference.getVariable(callContext);
+        }
+    }
+
+    private static class AddNode implements ExpressionNode {
+        private int _line;
+        private ExpressionNode _left;
+        private ExpressionNode _right;
+        private boolean _assignToLeft;
+        private TypeSpecialization _specialization;
+        private int _cost;
+
+        private AddNode(int line, ExpressionNode left, ExpressionNode right, boolean assignToLeft, TypeSpecialization specialization, int cost) {
+            _line = line;
+            _left = left;
+            _right = right;
+            _assignToLeft = assignToLeft;
+            _specialization = specialization;
+            _cost = cost;
+        }
+
+        @Override
+        public Variable evaluate(ExecutionContext context, CallContext callContext, CostCounter costCounter) throws ExecutionException {
+            final Variable left = _left.evaluate(context, callContext, costCounter);
+            final Variable right = _right.evaluate(context, callContext, costCounter);
+            final Variable result = _specialization.add(_line, left, right);
+            if (_assignToLeft)
+                context.setVariableValue(left, result);
+            costCounter.cost += _cost;
+            return result;
+        }
+    }
+
+    private static class MathNode implements ExpressionNode {
+        private int _line;
+        private ExpressionNode _left;
+        private Operator _operator;
+        private ExpressionNode _right;
+        private boolean _assignToLeft;
+        private TypeSpecialization _specialization;
+        private int _cost;
+
+        private MathNode(int line, ExpressionNode left, Operator operator, ExpressionNode right, boolean assignToLeft,
+                         TypeSpecialization specialization, int cost) {
+            _line = line;
+            _left = left;
+            _operator = operator;
+            _right = right;
+            _assignToLeft = assignToLeft;
+            _specialization = specialization;
+            _cost = cost;
+        }
+
+        @Override
+        public Variable evaluate(ExecutionContext context, CallContext callContext, CostCounter costCounter) throws ExecutionException {
+            final Variable left = _left.evaluate(context, callContext, costCounter);
+            final Variable right = _right.evaluate(context, callContext, costCounter);
+            final Variable result = _specialization.math(_line, left, _operator, right);
+            if (_assignToLeft)
+                context.setVariableValue(left, result);
+            costCounter.cost += _cost;
+            return result;
+        }
+    }
+
+    private static class ComparisonNode implements ExpressionNode {
+        private ExpressionNode _left;
+        private Operator _operator;
+        private ExpressionNode _right;
+        private TypeSpecialization _specialization;
+        private int _cost;
+
+        private ComparisonNode(ExpressionNode left, Operator operator, ExpressionNode right, TypeSpecialization specialization, int cost) {
+            _left = left;
+            _operator = operator;
+            _right = right;
+            _specialization = specialization;
+            _cost = cost;
+        }
+
+        @Override
+        public Variable evaluate(ExecutionContext context, CallContext callContext, CostCounter costCounter) throws ExecutionException {
+            final Variable left = _left.evaluate(context, callContext, costCounter);
+            final Variable right = _right.evaluate(context, callContext, costCounter);
+            costCounter.cost += _cost;
+            return _specialization.compare(left, _operator, right);
+        }
+    }
+
+    private static class NegateNode implements ExpressionNode {
+        private int _line;
+        private ExpressionNode _expression;
+        private int _cost;
+
+        private NegateNode(int line, ExpressionNode expression, int cost) {
+            _line = line;
+            _expression = expression;
+            _cost = cost;
+        }
+
+        @Override
+        public Variable evaluate(ExecutionContext context, CallContext callContext, CostCounter costCounter) throws ExecutionException {
+            final Variable result = ValueOperations.negate(_line, _expression.evaluate(context, callContext, costCounter));
+            costCounter.cost += _cost;
+            return result;
+        }
+    }
+
+    private static class NegativeNode implements ExpressionNode {
+        private int _line;
+        private ExpressionNode _expression;
+        private int _cost;
+
+        private NegativeNode(int line, ExpressionNode expression, int cost) {
+            _line = line;
+            _expression = expression;
+            _cost = cost;
+        }
+
+        @Override
+        public Variable evaluate(ExecutionContext context, CallContext callContext, CostCounter costCounter) throws ExecutionException {
+            final Variable result = ValueOperations.negative(_line, _expression.evaluate(context, callContext, costCounter));
+            costCounter.cost += _cost;
+            return result;
+        }
+    }
+
+    private static class IncrementDecrementNode implements ExpressionNode {
+        private int _line;
+        private ExpressionNode _expression;
+        private boolean _increment;
+        private boolean _pre;
+        private int _cost;
+
+        private IncrementDecrementNode(int line, ExpressionNode expression, boolean increment, boolean pre, int cost) {
+            _line = line;
+            _expression = expression;
+            _increment = increment;
+            _pre = pre;
+            _cost = cost;
+        }
+
+        @Override
+        public Variable evaluate(ExecutionContext context, CallContext callContext, CostCounter costCounter) throws ExecutionException {
+            final Variable result = ValueOperations.incrementDecrement(_line, _expression.evaluate(context, callContext, costCounter), _increment, _pre);
+            costCounter.cost += _cost;
+            return result;
+        }
+    }
+
+    private static class MapAccessNode implements ExpressionNode {
+        private int _line;
+        private ExpressionNode _map;
+        private ExpressionNode _property;
+        private boolean _assignable;
+        private int _cost;
+
+        private MapAccessNode(int line, ExpressionNode map, ExpressionNode property, boolean assignable, int cost) {
+            _line = line;
+            _map = map;
+            _property = property;
+            _assignable = assignable;
+            _cost = cost;
+        }
+
+        @Override
+        public Variable evaluate(ExecutionContext context, CallContext callContext, CostCounter costCounter) throws ExecutionException {
+            final Variable map = _map.evaluate(context, callContext, costCounter);
+            ValueOperations.validateMapOrList(_line, map);
+            final Variable property = _property.evaluate(context, callContext, costCounter);
+            final Variable result = ValueOperations.mapAccess(context, _line, map, property, _assignable);
+            costCounter.cost += _cost;
+            return result;
+        }
+    }
+
+    private static class LogicalNode implements ExpressionNode {
+        private int _line;
+        private ExpressionNode _left;
+        private boolean _shortCircuitValue;
+        private ExpressionNode _right;
+        private int _shortCircuitCost;
+        private int _cost;
+
+        private LogicalNode(int line, ExpressionNode left, Operator operator, ExpressionNode right, int shortCircuitCost, int cost) {
+            _line = line;
+            _left = left;
+            _shortCircuitValue = (operator == Operator.OR);
+            _right = right;
+            _shortCircuitCost = shortCircuitCost;
+            _cost = cost;
+        }
+
+        @Override
+        public Variable evaluate(ExecutionContext context, CallContext callContext, CostCounter costCounter) throws ExecutionException {
+            final boolean left = getBoolean(_left.evaluate(context, callContext, costCounter));
+            if (left == _shortCircuitValue) {
+                costCounter.cost += _shortCircuitCost;
+                return new Variable(left);
+            }
+            final boolean right = getBoolean(_right.evaluate(context, callContext, costCounter));
+            costCounter.cost += _cost;
+            return new Variable(right);
+        }
+
+        private boolean getBoolean(Variable value) throws ExecutionException {
+            if (value.getType() != Variable.Type.BOOLEAN)
+                throw new ExecutionException(_line, "Expected BOOLEAN");
+            return (Boolean) value.getValue();
+        }
+    }
+}
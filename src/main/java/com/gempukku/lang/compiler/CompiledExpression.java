@@ -0,0 +1,281 @@
+package com.gempukku.lang.compiler;
+
+import com.gempukku.lang.CallContext;
+import com.gempukku.lang.ExecutionContext;
+import com.gempukku.lang.ExecutionCostConfiguration;
+import com.gempukku.lang.ExecutionException;
+import com.gempukku.lang.Operator;
+import com.gempukku.lang.Variable;
+import com.gempukku.lang.VariableReference;
+import com.gempukku.lang.execution.TypeSpecialization;
+import com.gempukku.lang.execution.ValueOperations;
+
+/**
+ * Expression compiled into a flat array of instructions, evaluated on an operand stack. The cost charged for the
+ * evaluation is the same as the one charged for the statement tree it was compiled from.
+ * <p/>
+ * Arithmetic and comparison instructions are quickened in place, based on the types of values they are executed with.
+ * Once the expression gets hot, it is compiled further by ClosureCompiler, using the type feedback collected.
+ * Compiled expressions are shared by all the computers running the same program.
+ */
+public class CompiledExpression {
+    public static final int CONSTANT = 0;
+    public static final int VARIABLE = 1;
+    public static final int ADD = 2;
+    public static final int MATH = 3;
+    public static final int COMPARE = 4;
+    public static final int NEGATE = 5;
+    public static final int NEGATIVE = 6;
+    public static final int CHECK_MAP_OR_LIST = 7;
+    // Argument is 1, if the accessed element is assigned to
+    public static final int MAP_ACCESS = 8;
+    public static final int LOGICAL_SHORT_CIRCUIT = 9;
+    public static final int LOGICAL_RESULT = 10;
+
+    // Instructions ADD, MATH and COMPARE rewrite themselves on first execution to one of the variants specialized
+    // for the types of the values, variants fall back to generic instruction, if their type guard fails
+    public static final int ADD_NUMBERS = 11;
+    public static final int ADD_STRING = 12;
+    public static final int ADD_GENERIC = 13;
+    public static final int MATH_NUMBERS = 14;
+    public static final int MATH_GENERIC = 15;
+    public static final int COMPARE_NUMBERS = 16;
+    public static final int COMPARE_GENERIC = 17;
+
+    // Expression with constant operands, evaluated at compile time
+    public static final int FOLDED_CONSTANT = 18;
+
+    // Increment or decrement of a variable, argument has INCREMENT_FLAG and PRE_FLAG bits
+    public static final int INCREMENT_DECREMENT = 19;
+    public static final int INCREMENT_FLAG = 1;
+    public static final int PRE_FLAG = 2;
+
+    private int[] _opCodes;
+    private Object[] _operands;
+    private int[] _arguments;
+    private int[] _lines;
+    private boolean[] _nested;
+    private int _maxStackDepth;
+
+    /**
+     * Number of executions after which the expression is compiled by ClosureCompiler.
+     */
+    private static final int TIER_UP_THRESHOLD = 1000;
+
+    private int _executionCount;
+    private ExpressionNode _compiledNode;
+    private ExecutionCostConfiguration _compiledNodeConfiguration;
+
+    public CompiledExpression(int[] opCodes, Object[] operands, int[] arguments, int[] lines, boolean[] nested, int maxStackDepth) {
+        _opCodes = opCodes;
+        _operands = operands;
+        _arguments = arguments;
+        _lines = lines;
+        _nested = nested;
+        _maxStackDepth = maxStackDepth;
+    }
+
+    /**
+     * Evaluates the expression and places its result in the context value.
+     *
+     * @return Cost of the evaluation.
+     */
+    public int execute(ExecutionContext context, ExecutionCostConfiguration configuration) throws ExecutionException {
+        final CallContext callContext = context.peekCallContext();
+        final ExpressionNode compiledNode = _compiledNode;
+        if (compiledNode != null && _compiledNodeConfiguration == configuration) {
+            ExpressionNode.CostCounter costCounter = new ExpressionNode.CostCounter();
+            context.setContextValue(compiledNode.evaluate(context, callContext, costCounter));
+            return costCounter.cost;
+        }
+        if (_compiledNode == null && ++_executionCount >= TIER_UP_THRESHOLD) {
+            _compiledNodeConfiguration = configuration;
+            _compiledNode = ClosureCompiler.compile(_opCodes, _operands, _arguments, _lines, _nested, configuration);
+        }
+
+        final int nestedCost = configuration.getStackExecution() + configuration.getGetContextValue();
+
+        Variable[] stack = new Variable[_maxStackDepth];
+        int top = 0;
+        int cost = 0;
+        int pc = 0;
+        while (pc < _opCodes.length) {
+            final int line = _lines[pc];
+            switch (_opCodes[pc]) {
+                case CONSTANT:
+                    stack[top++] = new Variable(_operands[pc]);
+                    cost += configuration.getSetContextValue();
+                    break;
+                case FOLDED_CONSTANT:
+                    stack[top++] = ((FoldedConstant) _operands[pc]).getVariable();
+                    cost += ((FoldedConstant) _operands[pc]).getCost(configuration);
+                    break;
+                case VARIABLE:
+                    stack[top++] = ((VariableReference) _operands[pc]).getVariable(callContext);
+                    cost += configuration.getSetContextValue();
+                    break;
+                case ADD: {
+                    final Variable right = stack[--top];
+                    final Variable left = stack[top - 1];
+                    final int specialization = TypeSpecialization.specializeAdd(left, right);
+                    if (specialization == TypeSpecialization.NUMBERS)
+                        _opCodes[pc] = ADD_NUMBERS;
+                    else if (specialization == TypeSpecialization.STRING)
+                        _opCodes[pc] = ADD_STRING;
+                    else
+                        _opCodes[pc] = ADD_GENERIC;
+                    stack[top - 1] = assign(context, _arguments[pc], left, ValueOperations.add(line, left, right));
+                    cost += configuration.getSumValues();
+                    break;
+                }
+                case ADD_NUMBERS: {
+                    final Variable right = stack[--top];
+                    final Variable left = stack[top - 1];
+                    if (TypeSpecialization.isNumbers(left, right)) {
+                        stack[top - 1] = assign(context, _arguments[pc], left, ValueOperations.addNumbers(left, right));
+                    } else {
+                        _opCodes[pc] = ADD_GENERIC;
+                        stack[top - 1] = assign(context, _arguments[pc], left, ValueOperations.add(line, left, right));
+                    }
+                    cost += configuration.getSumValues();
+                    break;
+                }
+                case ADD_STRING: {
+                    final Variable right = stack[--top];
+                    final Variable left = stack[top - 1];
+                    if (left.getType() == Variable.Type.STRING) {
+                        stack[top - 1] = assign(context, _arguments[pc], left, ValueOperations.addToString(left, right));
+                    } else {
+                        _opCodes[pc] = ADD_GENERIC;
+                        stack[top - 1] = assign(context, _arguments[pc], left, ValueOperations.add(line, left, right));
+                    }
+                    cost += configuration.getSumValues();
+                    break;
+                }
+                case ADD_GENERIC: {
+                    final Variable right = stack[--top];
+                    final Variable left = stack[top - 1];
+                    stack[top - 1] = assign(context, _arguments[pc], left, ValueOperations.add(line, left, right));
+                    cost += configuration.getSumValues();
+                    break;
+                }
+                case MATH: {
+                    final Variable right = stack[--top];
+                    final Variable left = stack[top - 1];
+                    _opCodes[pc] = TypeSpecialization.isNumbers(left, right) ? MATH_NUMBERS : MATH_GENERIC;
+                    stack[top - 1] = assign(context, _arguments[pc], left, ValueOperations.math(line, left, (Operator) _operands[pc], right));
+                    cost += configuration.getOtherMathOperation() + configuration.getSetContextValue();
+                    break;
+                }
+                case MATH_NUMBERS: {
+                    final Variable right = stack[--top];
+                    final Variable left = stack[top - 1];
+                    if (TypeSpecialization.isNumbers(left, right)) {
+                        stack[top - 1] = assign(context, _arguments[pc], left, ValueOperations.mathNumbers(line, left, (Operator) _operands[pc], right));
+                    } else {
+                        _opCodes[pc] = MATH_GENERIC;
+                        stack[top - 1] = assign(context, _arguments[pc], left, ValueOperations.math(line, left, (Operator) _operands[pc], right));
+                    }
+                    cost += configuration.getOtherMathOperation() + configuration.getSetContextValue();
+                    break;
+                }
+                case MATH_GENERIC: {
+                    final Variable right = stack[--top];
+                    final Variable left = stack[top - 1];
+                    stack[top - 1] = assign(context, _arguments[pc], left, ValueOperations.math(line, left, (Operator) _operands[pc], right));
+                    cost += configuration.getOtherMathOperation() + configuration.getSetContextValue();
+                    break;
+                }
+                case COMPARE: {
+                    final Variable right = stack[--top];
+                    final Variable left = stack[top - 1];
+                    _opCodes[pc] = TypeSpecialization.isNumbers(left, right) ? COMPARE_NUMBERS : COMPARE_GENERIC;
+                    stack[top - 1] = ValueOperations.compare(left, (Operator) _operands[pc], right);
+                    cost += configuration.getCompareValues() + configuration.getSetContextValue();
+                    break;
+                }
+                case COMPARE_NUMBERS: {
+                    final Variable right = stack[--top];
+                    final Variable left = stack[top - 1];
+                    if (TypeSpecialization.isNumbers(left, right)) {
+                        stack[top - 1] = ValueOperations.compareNumbers(left, (Operator) _operands[pc], right);
+                    } else {
+                        _opCodes[pc] = COMPARE_GENERIC;
+                        stack[top - 1] = ValueOperations.compare(left, (Operator) _operands[pc], right);
+                    }
+                    cost += configuration.getCompareValues() + configuration.getSetContextValue();
+                    break;
+                }
+                case COMPARE_GENERIC: {
+                    final Variable right = stack[--top];
+                    final Variable left = stack[top - 1];
+                    stack[top - 1] = ValueOperations.compare(left, (Operator) _operands[pc], right);
+                    cost += configuration.getCompareValues() + configuration.getSetContextValue();
+                    break;
+                }
+                case NEGATE:
+                    stack[top - 1] = ValueOperations.negate(line, stack[top - 1]);
+                    cost += configuration.getSetContextValue();
+                    break;
+                case NEGATIVE:
+                    stack[top - 1] = ValueOperations.negative(line, stack[top - 1]);
+                    cost += configuration.getSetContextValue();
+                    break;
+                case INCREMENT_DECREMENT:
+                    stack[top - 1] = ValueOperations.incrementDecrement(line, stack[top - 1],
+                            (_arguments[pc] & INCREMENT_FLAG) != 0, (_arguments[pc] & PRE_FLAG) != 0);
+                    cost += configuration.getSetContextValue();
+                    break;
+                case CHECK_MAP_OR_LIST:
+                    ValueOperations.validateMapOrList(line, stack[top - 1]);
+                    break;
+                case MAP_ACCESS: {
+                    final Variable property = stack[--top];
+                    final Variable map = stack[top - 1];
+                    stack[top - 1] = ValueOperations.mapAccess(context, line, map, property, _arguments[pc] != 0);
+                    cost += configuration.getSetContextValue();
+                    break;
+                }
+                case LOGICAL_SHORT_CIRCUIT: {
+                    final Variable value = stack[--top];
+                    if (value.getType() != Variable.Type.BOOLEAN)
+                        throw new ExecutionException(line, "Expected BOOLEAN");
+                    final boolean result = (Boolean) value.getValue();
+                    final Operator operator = (Operator) _operands[pc];
+                    if ((operator == Operator.AND && !result) || (operator == Operator.OR && result)) {
+                        stack[top++] = new Variable(result);
+                        cost += configuration.getSetContextValue();
+                        if (_nested[pc])
+                            cost += nestedCost;
+                        pc = _arguments[pc];
+                        continue;
+                    }
+                    pc++;
+                    continue;
+                }
+                case LOGICAL_RESULT: {
+                    final Variable value = stack[top - 1];
+                    if (value.getType() != Variable.Type.BOOLEAN)
+                        throw new ExecutionException(line, "Expected BOOLEAN");
+                    stack[top - 1] = new Variable((boolean) (Boolean) value.getValue());
+                    cost += configuration.getSetContextValue();
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Unknown instruction " + _opCodes[pc]);
+            }
+            if (_nested[pc])
+                cost += nestedCost;
+            pc++;
+        }
+
+        context.setContextValue(stack[0]);
+        return cost;
+    }
+
+    private static Variable assign(ExecutionContext context, int assignToLeft, Variable left, Variable result) throws ExecutionException {
+        if (assignToLeft != 0)
+            context.setVariableValue(left, result);
+        return result;
+    }
+}
@@ -0,0 +1,259 @@
+package com.gempukku.lang.compiler;
+
+import com.gempukku.lang.ExecutableStatement;
+import com.gempukku.lang.statement.AddStatement;
+import com.gempukku.lang.statement.ComparisonStatement;
+import com.gempukku.lang.statement.CompiledExpressionStatement;
+import com.gempukku.lang.statement.ConstantStatement;
+import com.gempukku.lang.statement.IncrementDecrementStatement;
+import com.gempukku.lang.statement.LogicalOperatorStatement;
+import com.gempukku.lang.statement.MapAccessStatement;
+import com.gempukku.lang.statement.MathStatement;
+import com.gempukku.lang.statement.NegateStatement;
+import com.gempukku.lang.statement.NegativeStatement;
+import com.gempukku.lang.statement.VariableStatement;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles expressions that can not suspend the execution (no function calls or member access) into
+ * CompiledExpression. Any other statement is left as it is. If folding is enabled, sub-expressions with constant
+ * operands are evaluated at compile time, see FoldedConstant.
+ */
+public class ExpressionCompiler {
+    private List<Integer> _opCodes = new ArrayList<Integer>();
+    private List<Object> _operands = new ArrayList<Object>();
+    private List<Integer> _arguments = new ArrayList<Integer>();
+    private List<Integer> _lines = new ArrayList<Integer>();
+    private List<Boolean> _nested = new ArrayList<Boolean>();
+    private int _stackDepth;
+    private int _maxStackDepth;
+    // Folded constants of the sub-expressions of the compiled expression, null if folding is disabled
+    private Map<ExecutableStatement, FoldedConstant> _foldedConstants;
+
+    private ExpressionCompiler(Map<ExecutableStatement, FoldedConstant> foldedConstants) {
+        _foldedConstants = foldedConstants;
+    }
+
+    public static ExecutableStatement compile(ExecutableStatement statement) {
+        return compile(statement, true);
+    }
+
+    public static ExecutableStatement compile(ExecutableStatement statement, boolean foldConstants) {
+        if (statement instanceof CompiledExpressionStatement
+                || statement instanceof ConstantStatement
+                || statement instanceof VariableStatement
+                || !isCompilable(statement))
+            return statement;
+
+        ExpressionCompiler compiler = new ExpressionCompiler(foldConstants ? FoldedConstant.foldAll(statement) : null);
+        compiler.emit(statement);
+        return new CompiledExpressionStatement(statement, compiler.build());
+    }
+
+    /**
+     * Returns the expression compiled, so it can be evaluated directly by the execution of another statement,
+     * or null if the statement can't be compiled.
+     */
+    public static CompiledExpression getCompiledExpression(ExecutableStatement statement) {
+        if (statement instanceof CompiledExpressionStatement)
+            return ((CompiledExpressionStatement) statement).getCompiledExpression();
+        if (statement == null || !isCompilable(statement))
+            return null;
+
+        ExpressionCompiler compiler = new ExpressionCompiler(null);
+        compiler.emit(statement);
+        return compiler.build();
+    }
+
+    private static boolean isCompilable(ExecutableStatement statement) {
+        // Operands are checked from a stack, as expressions chaining many operators are too deep to recurse
+        LinkedList<ExecutableStatement> statements = new LinkedList<ExecutableStatement>();
+        statements.push(statement);
+        while (!statements.isEmpty()) {
+            final ExecutableStatement current = statements.pop();
+            if (current instanceof ConstantStatement || current instanceof VariableStatement
+                    || current instanceof CompiledExpressionStatement) {
+                continue;
+            } else if (current instanceof AddStatement) {
+                AddStatement add = (AddStatement) current;
+                statements.push(add.getLeft());
+                statements.push(add.getRight());
+            } else if (current instanceof MathStatement) {
+                MathStatement math = (MathStatement) current;
+                statements.push(math.getLeft());
+                statements.push(math.getRight());
+            } else if (current instanceof ComparisonStatement) {
+                ComparisonStatement comparison = (ComparisonStatement) current;
+                statements.push(comparison.getLeft());
+                statements.push(comparison.getRight());
+            } else if (current instanceof LogicalOperatorStatement) {
+                LogicalOperatorStatement logical = (LogicalOperatorStatement) current;
+                statements.push(logical.getLeft());
+                statements.push(logical.getRight());
+            } else if (current instanceof NegateStatement) {
+                statements.push(((NegateStatement) current).getExpression());
+            } else if (current instanceof NegativeStatement) {
+                statements.push(((NegativeStatement) current).getExpression());
+            } else if (current instanceof MapAccessStatement) {
+                MapAccessStatement mapAccess = (MapAccessStatement) current;
+                statements.push(mapAccess.getMapStatement());
+                statements.push(mapAccess.getPropertyStatement());
+            } else if (current instanceof IncrementDecrementStatement) {
+                statements.push(((IncrementDecrementStatement) current).getExpression());
+            } else {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Emits instructions of the expression. Steps yet to be done are kept on a stack, in reverse order, as
+     * expressions chaining many operators are too deep to recurse.
+     */
+    private void emit(ExecutableStatement statement) {
+        LinkedList<Step> steps = new LinkedList<Step>();
+        steps.push(Step.emit(statement, false));
+        while (!steps.isEmpty()) {
+            final Step step = steps.pop();
+            if (step._statement != null) {
+                emit(step._statement, step._nested, steps);
+            } else {
+                step._index = add(step._opCode, step._operand, step._argument, step._line, step._nested, step._stackChange);
+                // Jump past the result instruction, if short-circuited
+                if (step._shortCircuit != null)
+                    _arguments.set(step._shortCircuit._index, _opCodes.size());
+            }
+        }
+    }
+
+    private void emit(ExecutableStatement statement, boolean nested, LinkedList<Step> steps) {
+        if (_foldedConstants != null && !(statement instanceof ConstantStatement)) {
+            FoldedConstant foldedConstant = _foldedConstants.get(statement);
+            if (foldedConstant != null) {
+                add(CompiledExpression.FOLDED_CONSTANT, foldedConstant, 0, -1, nested, 1);
+                return;
+            }
+        }
+        if (statement instanceof CompiledExpressionStatement) {
+            steps.push(Step.emit(((CompiledExpressionStatement) statement).getSourceStatement(), nested));
+        } else if (statement instanceof ConstantStatement) {
+            add(CompiledExpression.CONSTANT, ((ConstantStatement) statement).getValue().getValue(), 0, -1, nested, 1);
+        } else if (statement instanceof VariableStatement) {
+            add(CompiledExpression.VARIABLE, ((VariableStatement) statement).getVariableReference(), 0, -1, nested, 1);
+        } else if (statement instanceof AddStatement) {
+            AddStatement add = (AddStatement) statement;
+            steps.push(Step.add(CompiledExpression.ADD, null, add.isAssignToLeft() ? 1 : 0, add.getLine(), nested, -1));
+            steps.push(Step.emit(add.getRight(), true));
+            steps.push(Step.emit(add.getLeft(), true));
+        } else if (statement instanceof MathStatement) {
+            MathStatement math = (MathStatement) statement;
+            steps.push(Step.add(CompiledExpression.MATH, math.getOperator(), math.isAssignToLeft() ? 1 : 0, math.getLine(), nested, -1));
+            steps.push(Step.emit(math.getRight(), true));
+            steps.push(Step.emit(math.getLeft(), true));
+        } else if (statement instanceof ComparisonStatement) {
+            ComparisonStatement comparison = (ComparisonStatement) statement;
+            steps.push(Step.add(CompiledExpression.COMPARE, comparison.getOperator(), 0, -1, nested, -1));
+            steps.push(Step.emit(comparison.getRight(), true));
+            steps.push(Step.emit(comparison.getLeft(), true));
+        } else if (statement instanceof LogicalOperatorStatement) {
+            LogicalOperatorStatement logical = (LogicalOperatorStatement) statement;
+            Step shortCircuit = Step.add(CompiledExpression.LOGICAL_SHORT_CIRCUIT, logical.getOperator(), 0, logical.getLine(), nested, -1);
+            Step result = Step.add(CompiledExpression.LOGICAL_RESULT, null, 0, logical.getLine(), nested, 0);
+            result._shortCircuit = shortCircuit;
+            steps.push(result);
+            steps.push(Step.emit(logical.getRight(), true));
+            steps.push(shortCircuit);
+            steps.push(Step.emit(logical.getLeft(), true));
+        } else if (statement instanceof NegateStatement) {
+            NegateStatement negate = (NegateStatement) statement;
+            steps.push(Step.add(CompiledExpression.NEGATE, null, 0, negate.getLine(), nested, 0));
+            steps.push(Step.emit(negate.getExpression(), true));
+        } else if (statement instanceof NegativeStatement) {
+            NegativeStatement negative = (NegativeStatement) statement;
+            steps.push(Step.add(CompiledExpression.NEGATIVE, null, 0, negative.getLine(), nested, 0));
+            steps.push(Step.emit(negative.getExpression(), true));
+        } else if (statement instanceof IncrementDecrementStatement) {
+            IncrementDecrementStatement incrementDecrement = (IncrementDecrementStatement) statement;
+            int flags = (incrementDecrement.isIncrement() ? CompiledExpression.INCREMENT_FLAG : 0)
+                    | (incrementDecrement.isPre() ? CompiledExpression.PRE_FLAG : 0);
+            steps.push(Step.add(CompiledExpression.INCREMENT_DECREMENT, null, flags, incrementDecrement.getLine(), nested, 0));
+            steps.push(Step.emit(incrementDecrement.getExpression(), true));
+        } else if (statement instanceof MapAccessStatement) {
+            MapAccessStatement mapAccess = (MapAccessStatement) statement;
+            steps.push(Step.add(CompiledExpression.MAP_ACCESS, null, mapAccess.isAssignable() ? 1 : 0, mapAccess.getLine(), nested, -1));
+            steps.push(Step.emit(mapAccess.getPropertyStatement(), true));
+            steps.push(Step.add(CompiledExpression.CHECK_MAP_OR_LIST, null, 0, mapAccess.getLine(), false, 0));
+            steps.push(Step.emit(mapAccess.getMapStatement(), true));
+        } else {
+            throw new IllegalArgumentException("Statement can't be compiled: " + statement.getClass().getSimpleName());
+        }
+    }
+
+    private int add(int opCode, Object operand, int argument, int line, boolean nested, int stackChange) {
+        _opCodes.add(opCode);
+        _operands.add(operand);
+        _arguments.add(argument);
+        _lines.add(line);
+        _nested.add(nested);
+        _stackDepth += stackChange;
+        _maxStackDepth = Math.max(_maxStackDepth, _stackDepth);
+        return _opCodes.size() - 1;
+    }
+
+    private CompiledExpression build() {
+        int size = _opCodes.size();
+        int[] opCodes = new int[size];
+        Object[] operands = _operands.toArray();
+        int[] arguments = new int[size];
+        int[] lines = new int[size];
+        boolean[] nested = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            opCodes[i] = _opCodes.get(i);
+            arguments[i] = _arguments.get(i);
+            lines[i] = _lines.get(i);
+            nested[i] = _nested.get(i);
+        }
+        return new CompiledExpression(opCodes, operands, arguments, lines, nested, _maxStackDepth);
+    }
+
+    /**
+     * Step of emitting an expression, either emitting instructions of a sub-expression, or adding a single
+     * instruction.
+     */
+    private static class Step {
+        private ExecutableStatement _statement;
+        private boolean _nested;
+        private int _opCode;
+        private Object _operand;
+        private int _argument;
+        private int _line;
+        private int _stackChange;
+        // Index of the instruction, once added
+        private int _index;
+        // Short circuit instruction, that jumps past this one
+        private Step _shortCircuit;
+
+        private static Step emit(ExecutableStatement statement, boolean nested) {
+            Step step = new Step();
+            step._statement = statement;
+            step._nested = nested;
+            return step;
+        }
+
+        private static Step add(int opCode, Object operand, int argument, int line, boolean nested, int stackChange) {
+            Step step = new Step();
+            step._opCode = opCode;
+            step._operand = operand;
+            step._argument = argument;
+            step._line = line;
+            step._nested = nested;
+            step._stackChange = stackChange;
+            return step;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.gempukku.lang.compiler;
+
+import com.gempukku.lang.CallContext;
+import com.gempukku.lang.ExecutionContext;
+import com.gempukku.lang.ExecutionException;
+import com.gempukku.lang.Variable;
+
+/**
+ * Node of an expression compiled by ClosureCompiler. Evaluates its value and adds the cost of the evaluation to the
+ * counter.
+ */
+interface ExpressionNode {
+    Variable evaluate(ExecutionContext context, CallContext callContext, CostCounter costCounter) throws ExecutionException;
+
+    final class CostCounter {
+        int cost;
+    }
+}
@@ -0,0 +1,228 @@
+package com.gempukku.lang.compiler;
+
+import com.gempukku.lang.ExecutableStatement;
+import com.gempukku.lang.ExecutionCostConfiguration;
+import com.gempukku.lang.ExecutionException;
+import com.gempukku.lang.Operator;
+import com.gempukku.lang.Variable;
+import com.gempukku.lang.execution.ValueOperations;
+import com.gempukku.lang.statement.AddStatement;
+import com.gempukku.lang.statement.ComparisonStatement;
+import com.gempukku.lang.statement.CompiledExpressionStatement;
+import com.gempukku.lang.statement.ConstantStatement;
+import com.gempukku.lang.statement.IncrementDecrementStatement;
+import com.gempukku.lang.statement.LogicalOperatorStatement;
+import com.gempukku.lang.statement.MapAccessStatement;
+import com.gempukku.lang.statement.MathStatement;
+import com.gempukku.lang.statement.NegateStatement;
+import com.gempukku.lang.statement.NegativeStatement;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Value of an expression evaluated at compile time, because all of its operands are constants. Along with the value
+ * it remembers the operations the expression consists of, so evaluating the folded constant charges the same cost as
+ * the expression it was folded from.
+ */
+public class FoldedConstant {
+    private Object _value;
+    private int _contextValues;
+    private int _sums;
+    private int _mathOperations;
+    private int _comparisons;
+    private int _nestedExecutions;
+
+    private FoldedConstant(Object value) {
+        _value = value;
+    }
+
+    /**
+     * Folds the expression into a constant.
+     *
+     * @return Folded constant, or null if the expression can't be evaluated at compile time, or its evaluation fails
+     * (in which case the failure is reported at runtime).
+     */
+    public static FoldedConstant fold(ExecutableStatement statement) {
+        return foldAll(statement).get(statement);
+    }
+
+    /**
+     * Folds the expression and each of its sub-expressions into constants. The expression is walked once, from a
+     * stack, as expressions chaining many operators are too deep to recurse.
+     *
+     * @return Folded constants of the expression and sub-expressions that can be evaluated at compile time.
+     */
+    public static Map<ExecutableStatement, FoldedConstant> foldAll(ExecutableStatement statement) {
+        Map<ExecutableStatement, FoldedConstant> result = new IdentityHashMap<ExecutableStatement, FoldedConstant>();
+        // Statements are visited twice, on the first visit their operands are stacked, on the second one they are
+        // folded, as their operands have been folded by then
+        Set<ExecutableStatement> visited = Collections.newSetFromMap(new IdentityHashMap<ExecutableStatement, Boolean>());
+        LinkedList<ExecutableStatement> stack = new LinkedList<ExecutableStatement>();
+        stack.push(statement);
+        while (!stack.isEmpty()) {
+            final ExecutableStatement current = stack.peek();
+            if (visited.add(current)) {
+                for (ExecutableStatement operand : getOperands(current)) {
+                    if (operand != null)
+                        stack.push(operand);
+                }
+            } else {
+                stack.pop();
+                try {
+                    FoldedConstant foldedConstant = foldStatement(current, result);
+                    if (foldedConstant != null)
+                        result.put(current, foldedConstant);
+                } catch (ExecutionException exp) {
+                    // Not folded, the failure is reported at runtime
+                }
+            }
+        }
+        return result;
+    }
+
+    private static List<ExecutableStatement> getOperands(ExecutableStatement statement) {
+        if (statement instanceof CompiledExpressionStatement)
+            return Collections.singletonList(((CompiledExpressionStatement) statement).getSourceStatement());
+        if (statement instanceof AddStatement)
+            return Arrays.asList(((AddStatement) statement).getLeft(), ((AddStatement) statement).getRight());
+        if (statement instanceof MathStatement)
+            return Arrays.asList(((MathStatement) statement).getLeft(), ((MathStatement) statement).getRight());
+        if (statement instanceof ComparisonStatement)
+            return Arrays.asList(((ComparisonStatement) statement).getLeft(), ((ComparisonStatement) statement).getRight());
+        if (statement instanceof LogicalOperatorStatement)
+            return Arrays.asList(((LogicalOperatorStatement) statement).getLeft(), ((LogicalOperatorStatement) statement).getRight());
+        if (statement instanceof NegateStatement)
+            return Collections.singletonList(((NegateStatement) statement).getExpression());
+        if (statement instanceof NegativeStatement)
+            return Collections.singletonList(((NegativeStatement) statement).getExpression());
+        // Not folded themselves, but their operands might be
+        if (statement instanceof MapAccessStatement)
+            return Arrays.asList(((MapAccessStatement) statement).getMapStatement(), ((MapAccessStatement) statement).getPropertyStatement());
+        if (statement instanceof IncrementDecrementStatement)
+            return Collections.singletonList(((IncrementDecrementStatement) statement).getExpression());
+        return Collections.emptyList();
+    }
+
+    /**
+     * Folds the statement, using the folded constants of its operands.
+     */
+    private static FoldedConstant foldStatement(ExecutableStatement statement, Map<ExecutableStatement, FoldedConstant> folded) throws ExecutionException {
+        if (statement instanceof CompiledExpressionStatement) {
+            return folded.get(((CompiledExpressionStatement) statement).getSourceStatement());
+        } else if (statement instanceof ConstantStatement) {
+            FoldedConstant result = new FoldedConstant(((ConstantStatement) statement).getValue().getValue());
+            result._contextValues = 1;
+            return result;
+        } else if (statement instanceof AddStatement) {
+            AddStatement add = (AddStatement) statement;
+            if (add.isAssignToLeft())
+                return null;
+            FoldedConstant left = folded.get(add.getLeft());
+            FoldedConstant right = folded.get(add.getRight());
+            if (left == null || right == null)
+                return null;
+            FoldedConstant result = combine(ValueOperations.add(add.getLine(), left.getVariable(), right.getVariable()), left, right);
+            result._sums++;
+            return result;
+        } else if (statement instanceof MathStatement) {
+            MathStatement math = (MathStatement) statement;
+            if (math.isAssignToLeft())
+                return null;
+            FoldedConstant left = folded.get(math.getLeft());
+            FoldedConstant right = folded.get(math.getRight());
+            if (left == null || right == null)
+                return null;
+            FoldedConstant result = combine(ValueOperations.math(math.getLine(), left.getVariable(), math.getOperator(), right.getVariable()), left, right);
+            result._mathOperations++;
+            result._contextValues++;
+            return result;
+        } else if (statement instanceof ComparisonStatement) {
+            ComparisonStatement comparison = (ComparisonStatement) statement;
+            FoldedConstant left = folded.get(comparison.getLeft());
+            FoldedConstant right = folded.get(comparison.getRight());
+            if (left == null || right == null)
+                return null;
+            FoldedConstant result = combine(ValueOperations.compare(left.getVariable(), comparison.getOperator(), right.getVariable()), left, right);
+            result._comparisons++;
+            result._contextValues++;
+            return result;
+        } else if (statement instanceof NegateStatement) {
+            NegateStatement negate = (NegateStatement) statement;
+            FoldedConstant expression = folded.get(negate.getExpression());
+            if (expression == null)
+                return null;
+            FoldedConstant result = combine(ValueOperations.negate(negate.getLine(), expression.getVariable()), expression);
+            result._contextValues++;
+            return result;
+        } else if (statement instanceof NegativeStatement) {
+            NegativeStatement negative = (NegativeStatement) statement;
+            FoldedConstant expression = folded.get(negative.getExpression());
+            if (expression == null)
+                return null;
+            FoldedConstant result = combine(ValueOperations.negative(negative.getLine(), expression.getVariable()), expression);
+            result._contextValues++;
+            return result;
+        } else if (statement instanceof LogicalOperatorStatement) {
+            LogicalOperatorStatement logical = (LogicalOperatorStatement) statement;
+            FoldedConstant left = folded.get(logical.getLeft());
+            if (left == null)
+                return null;
+            final Variable leftValue = left.getVariable();
+            if (leftValue.getType() != Variable.Type.BOOLEAN)
+                return null;
+            final boolean leftResult = (Boolean) leftValue.getValue();
+            if ((logical.getOperator() == Operator.AND && !leftResult) || (logical.getOperator() == Operator.OR && leftResult)) {
+                // Short-circuited, right side is never evaluated
+                FoldedConstant result = combine(leftValue, left);
+                result._contextValues++;
+                return result;
+            }
+            FoldedConstant right = folded.get(logical.getRight());
+            if (right == null || right.getVariable().getType() != Variable.Type.BOOLEAN)
+                return null;
+            FoldedConstant result = combine(right.getVariable(), left, right);
+            result._contextValues++;
+            return result;
+        }
+        return null;
+    }
+
+    private static FoldedConstant combine(Variable value, FoldedConstant... operands) {
+        FoldedConstant result = new FoldedConstant(value.getValue());
+        for (FoldedConstant operand : operands) {
+            result._contextValues += operand._contextValues;
+            result._sums += operand._sums;
+            result._mathOperations += operand._mathOperations;
+            result._comparisons += operand._comparisons;
+            // Each operand is evaluated as a nested execution
+            result._nestedExecutions += operand._nestedExecutions + 1;
+        }
+        return result;
+    }
+
+    public Object getValue() {
+        return _value;
+    }
+
+    public Variable getVariable() {
+        return new Variable(_value);
+    }
+
+    /**
+     * Cost of evaluating the expression this constant was folded from, excluding the cost of the expression being
+     * nested itself.
+     */
+    public int getCost(ExecutionCostConfiguration configuration) {
+        return _contextValues * configuration.getSetContextValue()
+                + _sums * configuration.getSumValues()
+                + _mathOperations * configuration.getOtherMathOperation()
+                + _comparisons * configuration.getCompareValues()
+                + _nestedExecutions * (configuration.getStackExecution() + configuration.getGetContextValue());
+    }
+}
@@ -13,6 +13,7 @@ public class AddExecution implements Execution {
     private ExecutableStatement _left;
     private ExecutableStatement _right;
     private boolean _assignToLeft;
+    private TypeSpecialization _specialization;
 
     private boolean _stackedLeft;
     private boolean _resolvedLeft;
@@ -21,11 +22,12 @@ public class AddExecution implements Execution {
 
     private Variable _leftValue;
 
-    public AddExecution(int line, ExecutableStatement left, ExecutableStatement right, boolean assignToLeft) {
+    public AddExecution(int line, ExecutableStatement left, ExecutableStatement right, boolean assignToLeft, TypeSpecialization specialization) {
         _line = line;
         _left = left;
         _right = right;
         _assignToLeft = assignToLeft;
+        _specialization = specialization;
     }
 
     @Override
@@ -46,47 +48,27 @@ public class AddExecution implements Execution {
         if (!_stackedLeft) {
             executionContext.stackExecution(_left.createExecution());
             _stackedLeft = true;
-            return new ExecutionProgress(configuration.getStackExecution());
+            return ExecutionProgress.of(configuration.getStackExecution());
         }
         if (!_resolvedLeft) {
             _leftValue = executionContext.getContextValue();
             _resolvedLeft = true;
-            return new ExecutionProgress(configuration.getGetContextValue());
+            return ExecutionProgress.of(configuration.getGetContextValue());
         }
         if (!_stackedRight) {
             executionContext.stackExecution(_right.createExecution());
             _stackedRight = true;
-            return new ExecutionProgress(configuration.getStackExecution());
+            return ExecutionProgress.of(configuration.getStackExecution());
         }
         if (!_resolvedAndAssignedSum) {
             Variable rightValue = executionContext.getContextValue();
-            Object result;
-            if (_leftValue.getType() == Variable.Type.STRING) {
-                result = convertToString(_leftValue) + convertToString(rightValue);
-            } else if (rightValue.getType() == Variable.Type.NUMBER && _leftValue.getType() == Variable.Type.NUMBER) {
-                result = ((Number) _leftValue.getValue()).floatValue() + ((Number) rightValue.getValue()).floatValue();
-            } else {
-                throw new ExecutionException(_line, "Unable to add two values of types " + _leftValue.getType() + " and " + rightValue.getType());
-            }
+            final Variable result = _specialization.add(_line, _leftValue, rightValue);
             if (_assignToLeft)
-                _leftValue.setValue(result);
-            executionContext.setContextValue(new Variable(result));
+                executionContext.setVariableValue(_leftValue, result);
+            executionContext.setContextValue(result);
             _resolvedAndAssignedSum = true;
-            return new ExecutionProgress(configuration.getGetContextValue() + configuration.getSumValues());
+            return ExecutionProgress.of(configuration.getGetContextValue() + configuration.getSumValues());
         }
         return null;
     }
-
-    private String convertToString(Variable variable) {
-        if (variable.getType() == Variable.Type.STRING)
-            return (String) variable.getValue();
-        else if (variable.getType() == Variable.Type.NUMBER)
-            return String.valueOf(((Number) variable.getValue()).floatValue());
-        else if (variable.getType() == Variable.Type.NULL)
-            return "null";
-        else if (variable.getType() == Variable.Type.BOOLEAN)
-            return ((Boolean) variable.getValue()) ? "true" : "false";
-        else
-            return "";
-    }
 }
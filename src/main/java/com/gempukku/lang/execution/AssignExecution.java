@@ -42,22 +42,22 @@ public class AssignExecution implements Execution {
         if (!_stackedVariable) {
             executionContext.stackExecution(_variable.createExecution());
             _stackedVariable = true;
-            return new ExecutionProgress(configuration.getStackExecution());
+            return ExecutionProgress.of(configuration.getStackExecution());
         }
         if (!_extractedVariable) {
             _variablePointer = executionContext.getContextValue();
             _extractedVariable = true;
-            return new ExecutionProgress(configuration.getGetContextValue());
+            return ExecutionProgress.of(configuration.getGetContextValue());
         }
         if (!_stackedValue) {
             executionContext.stackExecution(_value.createExecution());
             _stackedValue = true;
-            return new ExecutionProgress(configuration.getStackExecution());
+            return ExecutionProgress.of(configuration.getStackExecution());
         }
         if (!_assignedValue) {
-            executionContext.setVariableValue(_variablePointer, executionContext.getContextValue().getValue());
+            executionContext.setVariableValue(_variablePointer, executionContext.getContextValue());
             _assignedValue = true;
-            return new ExecutionProgress(configuration.getGetContextValue() + configuration.getSetVariable());
+            return ExecutionProgress.of(configuration.getGetContextValue() + configuration.getSetVariable());
         }
         return null;
     }
@@ -13,6 +13,7 @@ public class ComparisonExecution implements Execution {
     private ExecutableStatement _left;
     private Operator _operator;
     private ExecutableStatement _right;
+    private TypeSpecialization _specialization;
 
     private boolean _stackedLeft;
     private boolean _resolvedLeft;
@@ -21,10 +22,11 @@ public class ComparisonExecution implements Execution {
 
     private Variable _leftValue;
 
-    public ComparisonExecution(ExecutableStatement left, Operator operator, ExecutableStatement right) {
+    public ComparisonExecution(ExecutableStatement left, Operator operator, ExecutableStatement right, TypeSpecialization specialization) {
         _left = left;
         _operator = operator;
         _right = right;
+        _specialization = specialization;
     }
 
     @Override
@@ -45,37 +47,23 @@ public class ComparisonExecution implements Execution {
         if (!_stackedLeft) {
             executionContext.stackExecution(_left.createExecution());
             _stackedLeft = true;
-            return new ExecutionProgress(configuration.getStackExecution());
+            return ExecutionProgress.of(configuration.getStackExecution());
         }
         if (!_resolvedLeft) {
             _leftValue = executionContext.getContextValue();
             _resolvedLeft = true;
-            return new ExecutionProgress(configuration.getGetContextValue());
+            return ExecutionProgress.of(configuration.getGetContextValue());
         }
         if (!_stackedRight) {
             executionContext.stackExecution(_right.createExecution());
             _stackedRight = true;
-            return new ExecutionProgress(configuration.getStackExecution());
+            return ExecutionProgress.of(configuration.getStackExecution());
         }
         if (!_resolvedAndAssignedSum) {
             Variable rightValue = executionContext.getContextValue();
-            if (_leftValue.getType() != rightValue.getType()) {
-                executionContext.setContextValue(new Variable(_operator == Operator.NOT_EQUALS));
-            } else {
-                boolean equals;
-                if (_leftValue.getType() == Variable.Type.STRING)
-                    equals = _leftValue.getValue().equals(rightValue.getValue());
-                else if (_leftValue.getType() == Variable.Type.NUMBER)
-                    equals = ((Number) _leftValue.getValue()).floatValue() == ((Number) rightValue.getValue()).floatValue();
-                else
-                    equals = _leftValue.getValue() == rightValue.getValue();
-                if (equals)
-                    executionContext.setContextValue(new Variable(_operator == Operator.EQUALS));
-                else
-                    executionContext.setContextValue(new Variable(_operator == Operator.NOT_EQUALS));
-            }
+            executionContext.setContextValue(_specialization.compare(_leftValue, _operator, rightValue));
             _resolvedAndAssignedSum = true;
-            return new ExecutionProgress(configuration.getGetContextValue() + configuration.getCompareValues() + configuration.getSetContextValue());
+            return ExecutionProgress.of(configuration.getGetContextValue() + configuration.getCompareValues() + configuration.getSetContextValue());
         }
         return null;
     }
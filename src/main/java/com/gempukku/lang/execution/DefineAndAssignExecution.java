@@ -10,6 +10,7 @@ import com.gempukku.lang.Variable;
 
 public class DefineAndAssignExecution implements Execution {
     private String _name;
+    private int _index;
     private ExecutableStatement _value;
 
     private boolean _defined;
@@ -18,8 +19,9 @@ public class DefineAndAssignExecution implements Execution {
 
     private Variable _variable;
 
-    public DefineAndAssignExecution(String name, ExecutableStatement value) {
+    public DefineAndAssignExecution(String name, int index, ExecutableStatement value) {
         _name = name;
+        _index = index;
         _value = value;
     }
 
@@ -37,19 +39,19 @@ public class DefineAndAssignExecution implements Execution {
     @Override
     public ExecutionProgress executeNextStatement(ExecutionContext executionContext, ExecutionCostConfiguration configuration) throws ExecutionException {
         if (!_defined) {
-            _variable = executionContext.peekCallContext().defineVariable(_name);
+            _variable = executionContext.defineVariable(_name, _index);
             _defined = true;
-            return new ExecutionProgress(configuration.getDefineVariable());
+            return ExecutionProgress.of(configuration.getDefineVariable());
         }
         if (!_stackedValue) {
             executionContext.stackExecution(_value.createExecution());
             _stackedValue = true;
-            return new ExecutionProgress(configuration.getStackExecution());
+            return ExecutionProgress.of(configuration.getStackExecution());
         }
         if (!_assignedValue) {
-            executionContext.setVariableValue(_variable, executionContext.getContextValue().getValue());
+            executionContext.setVariableValue(_variable, executionContext.getContextValue());
             _assignedValue = true;
-            return new ExecutionProgress(configuration.getGetContextValue() + configuration.getSetVariable());
+            return ExecutionProgress.of(configuration.getGetContextValue() + configuration.getSetVariable());
         }
         return null;
     }
@@ -0,0 +1,86 @@
+package com.gempukku.lang.execution;
+
+import com.gempukku.lang.ExecutableStatement;
+import com.gempukku.lang.Execution;
+import com.gempukku.lang.ExecutionContext;
+import com.gempukku.lang.ExecutionCostConfiguration;
+import com.gempukku.lang.ExecutionException;
+import com.gempukku.lang.ExecutionProgress;
+import com.gempukku.lang.Variable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Iterates over elements of a LIST, or keys of a MAP. Each iteration assigns the element to the loop variable and
+ * stacks the statement in loop as a single step. Elements of a list are read by index, so the list may be modified
+ * during the iteration, keys of a map are iterated over a copy taken when the loop starts.
+ */
+public class ForEachExecution implements Execution {
+    private int _line;
+    private String _variableName;
+    private int _variableIndex;
+    private ExecutableStatement _iteratedExpression;
+    private ExecutableStatement _statementInLoop;
+
+    private boolean _terminated;
+
+    private boolean _expressionStacked;
+    private Variable _loopVariable;
+    private List<Variable> _elements;
+    private List<String> _keys;
+    private int _nextIndex;
+
+    public ForEachExecution(int line, String variableName, int variableIndex, ExecutableStatement iteratedExpression, ExecutableStatement statementInLoop) {
+        _line = line;
+        _variableName = variableName;
+        _variableIndex = variableIndex;
+        _iteratedExpression = iteratedExpression;
+        _statementInLoop = statementInLoop;
+    }
+
+    @Override
+    public boolean hasNextExecution(ExecutionContext executionContext) {
+        return !_terminated;
+    }
+
+    @Override
+    public ExecutionProgress executeNextStatement(ExecutionContext executionContext, ExecutionCostConfiguration configuration) throws ExecutionException {
+        if (!_expressionStacked) {
+            executionContext.stackExecution(_iteratedExpression.createExecution());
+            _expressionStacked = true;
+            return ExecutionProgress.of(configuration.getStackExecution());
+        }
+        if (_loopVariable == null) {
+            final Variable value = executionContext.getContextValue();
+            if (value.getType() == Variable.Type.LIST)
+                _elements = (List<Variable>) value.getValue();
+            else if (value.getType() == Variable.Type.MAP)
+                _keys = new ArrayList<String>(((Map<String, Variable>) value.getValue()).keySet());
+            else
+                throw new ExecutionException(_line, "Unable to iterate over value of type " + value.getType());
+            _loopVariable = executionContext.defineVariable(_variableName, _variableIndex);
+            return ExecutionProgress.of(configuration.getGetContextValue() + configuration.getDefineVariable());
+        }
+
+        int size = (_elements != null) ? _elements.size() : _keys.size();
+        if (_nextIndex >= size) {
+            _terminated = true;
+            return ExecutionProgress.of(configuration.getCompareValues());
+        }
+
+        if (_elements != null)
+            executionContext.setVariableValue(_loopVariable, _elements.get(_nextIndex));
+        else
+            executionContext.setVariableValue(_loopVariable, _keys.get(_nextIndex));
+        _nextIndex++;
+
+        int cost = configuration.getCompareValues() + configuration.getSetVariable();
+        if (_statementInLoop != null) {
+            executionContext.stackExecution(_statementInLoop.createExecution());
+            cost += configuration.getStackExecution();
+        }
+        return ExecutionProgress.of(cost);
+    }
+}
@@ -7,6 +7,7 @@ import com.gempukku.lang.ExecutionCostConfiguration;
 import com.gempukku.lang.ExecutionException;
 import com.gempukku.lang.ExecutionProgress;
 import com.gempukku.lang.Variable;
+import com.gempukku.lang.compiler.CompiledExpression;
 
 public class ForExecution implements Execution {
     private int _line;
@@ -14,6 +15,8 @@ public class ForExecution implements Execution {
     private ExecutableStatement _terminationCondition;
     private ExecutableStatement _executedAfterEachLoop;
     private ExecutableStatement _statementInLoop;
+    private CompiledExpression _compiledTerminationCondition;
+    private CompiledExpression _compiledExecutedAfterEachLoop;
 
     private boolean _terminated;
 
@@ -23,12 +26,17 @@ public class ForExecution implements Execution {
 
     private boolean _statementStacked;
 
-    public ForExecution(int line, ExecutableStatement initializationStatement, ExecutableStatement terminationCondition, ExecutableStatement executedAfterEachLoop, ExecutableStatement statementInLoop) {
+    private boolean _iterationStarted;
+
+    public ForExecution(int line, ExecutableStatement initializationStatement, ExecutableStatement terminationCondition, ExecutableStatement executedAfterEachLoop, ExecutableStatement statementInLoop,
+                        CompiledExpression compiledTerminationCondition, CompiledExpression compiledExecutedAfterEachLoop) {
         _line = line;
         _initializationStatement = initializationStatement;
         _terminationCondition = terminationCondition;
         _executedAfterEachLoop = executedAfterEachLoop;
         _statementInLoop = statementInLoop;
+        _compiledTerminationCondition = compiledTerminationCondition;
+        _compiledExecutedAfterEachLoop = compiledExecutedAfterEachLoop;
     }
 
     @Override
@@ -45,13 +53,15 @@ public class ForExecution implements Execution {
             _initialized = true;
             if (_initializationStatement != null) {
                 executionContext.stackExecution(_initializationStatement.createExecution());
-                return new ExecutionProgress(configuration.getStackExecution());
+                return ExecutionProgress.of(configuration.getStackExecution());
             }
         }
+        if (_compiledTerminationCondition != null && (_executedAfterEachLoop == null || _compiledExecutedAfterEachLoop != null))
+            return executeFusedIteration(executionContext, configuration);
         if (!_conditionStacked) {
             executionContext.stackExecution(_terminationCondition.createExecution());
             _conditionStacked = true;
-            return new ExecutionProgress(configuration.getStackExecution());
+            return ExecutionProgress.of(configuration.getStackExecution());
         }
         if (!_conditionChecked) {
             final Variable value = executionContext.getContextValue();
@@ -60,13 +70,13 @@ public class ForExecution implements Execution {
             if (!(Boolean) value.getValue())
                 _terminated = true;
             _conditionChecked = true;
-            return new ExecutionProgress(configuration.getGetContextValue() + configuration.getCompareValues());
+            return ExecutionProgress.of(configuration.getGetContextValue() + configuration.getCompareValues());
         }
         if (!_statementStacked) {
             _statementStacked = true;
             if (_statementInLoop != null) {
                 executionContext.stackExecution(_statementInLoop.createExecution());
-                return new ExecutionProgress(configuration.getStackExecution());
+                return ExecutionProgress.of(configuration.getStackExecution());
             }
         }
         if (_executedAfterEachLoop != null)
@@ -74,6 +84,36 @@ public class ForExecution implements Execution {
         _conditionStacked = false;
         _conditionChecked = false;
         _statementStacked = false;
-        return new ExecutionProgress(configuration.getStackExecution());
+        return ExecutionProgress.of(configuration.getStackExecution());
+    }
+
+    /**
+     * Executes the statement after each loop (once an iteration was started), evaluates the condition and stacks the
+     * statement in loop as a single step, charging the same cost as executing these in separate steps.
+     */
+    private ExecutionProgress executeFusedIteration(ExecutionContext executionContext, ExecutionCostConfiguration configuration) throws ExecutionException {
+        int cost = 0;
+        if (_iterationStarted) {
+            cost += configuration.getStackExecution();
+            if (_compiledExecutedAfterEachLoop != null)
+                cost += _compiledExecutedAfterEachLoop.execute(executionContext, configuration);
+        }
+        cost += configuration.getStackExecution() + _compiledTerminationCondition.execute(executionContext, configuration);
+
+        final Variable value = executionContext.getContextValue();
+        if (value.getType() != Variable.Type.BOOLEAN)
+            throw new ExecutionException(_line, "Condition not of type BOOLEAN");
+        cost += configuration.getGetContextValue() + configuration.getCompareValues();
+        if (!(Boolean) value.getValue()) {
+            _terminated = true;
+            return ExecutionProgress.of(cost);
+        }
+
+        _iterationStarted = true;
+        if (_statementInLoop != null) {
+            executionContext.stackExecution(_statementInLoop.createExecution());
+            cost += configuration.getStackExecution();
+        }
+        return ExecutionProgress.of(cost);
     }
 }
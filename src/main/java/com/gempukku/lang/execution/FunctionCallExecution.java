@@ -8,6 +8,7 @@ import com.gempukku.lang.ExecutionCostConfiguration;
 import com.gempukku.lang.ExecutionException;
 import com.gempukku.lang.ExecutionProgress;
 import com.gempukku.lang.FunctionExecutable;
+import com.gempukku.lang.NativeFunctionExecutable;
 import com.gempukku.lang.Variable;
 
 import java.util.ArrayList;
@@ -18,21 +19,28 @@ public class FunctionCallExecution implements Execution {
     private int _line;
     private ExecutableStatement _function;
     private List<ExecutableStatement> _parameters;
+    private boolean _tailCall;
 
     private boolean _functionStacked;
     private boolean _functionResolved;
     private int _nextParameterIndexStacked;
     private int _nextParameterValueStored;
     private boolean _functionCalled;
+    private boolean _nativeFunctionCalled;
     private boolean _returnResultRead;
 
     private Variable _functionVar;
     private List<Variable> _parameterValues = new ArrayList<Variable>();
 
     public FunctionCallExecution(int line, ExecutableStatement function, List<ExecutableStatement> parameters) {
+        this(line, function, parameters, false);
+    }
+
+    public FunctionCallExecution(int line, ExecutableStatement function, List<ExecutableStatement> parameters, boolean tailCall) {
         _line = line;
         _function = function;
         _parameters = parameters;
+        _tailCall = tailCall;
     }
 
     @Override
@@ -57,50 +65,73 @@ public class FunctionCallExecution implements Execution {
         if (!_functionStacked) {
             executionContext.stackExecution(_function.createExecution());
             _functionStacked = true;
-            return new ExecutionProgress(configuration.getStackExecution());
+            return ExecutionProgress.of(configuration.getStackExecution());
         }
         if (!_functionResolved) {
             _functionVar = executionContext.getContextValue();
             _functionResolved = true;
-            return new ExecutionProgress(configuration.getGetContextValue());
+            return ExecutionProgress.of(configuration.getGetContextValue());
         }
         if (_nextParameterValueStored < _nextParameterIndexStacked) {
             _parameterValues.add(executionContext.getContextValue());
             _nextParameterValueStored++;
-            return new ExecutionProgress(configuration.getGetContextValue());
+            return ExecutionProgress.of(configuration.getGetContextValue());
         }
         if (_nextParameterIndexStacked < _parameters.size()) {
             executionContext.stackExecution(_parameters.get(_nextParameterIndexStacked).createExecution());
             _nextParameterIndexStacked++;
-            return new ExecutionProgress(configuration.getStackExecution());
+            return ExecutionProgress.of(configuration.getStackExecution());
         }
         if (!_functionCalled) {
             if (_functionVar.getType() != Variable.Type.FUNCTION)
                 throw new ExecutionException(_line, "Expected function");
             FunctionExecutable function = (FunctionExecutable) _functionVar.getValue();
-            final CallContext functionContextParent = function.getCallContext();
             final Collection<String> parameterNames = function.getParameterNames();
             if (_parameterValues.size() > parameterNames.size())
                 throw new ExecutionException(_line, "Function does not accept as many parameters");
 
-            CallContext functionContext = new CallContext(functionContextParent, false, true);
-            int i = 0;
-            for (String parameterName : parameterNames) {
-                Variable var = functionContext.defineVariable(parameterName);
-                if (i < _parameterValues.size())
-                    executionContext.setVariableValue(var, _parameterValues.get(i).getValue());
-                i++;
+            if (function instanceof NativeFunctionExecutable) {
+                // Native function runs in the group of the caller and gets the parameters positionally
+                Variable[] parameters = new Variable[parameterNames.size()];
+                for (int i = 0; i < parameters.length; i++) {
+                    Variable var = new Variable(null);
+                    if (i < _parameterValues.size())
+                        var.setValue(_parameterValues.get(i));
+                    parameters[i] = var;
+                }
+                executionContext.stackExecution(((NativeFunctionExecutable) function).createNativeExecution(_line, executionContext, parameters));
+                _nativeFunctionCalled = true;
+            } else {
+                final CallContext functionContextParent = function.getCallContext();
+                CallContext functionContext = new CallContext(functionContextParent, false, true);
+                int i = 0;
+                // Memory of the parameters is charged, when the function context is stacked
+                for (String parameterName : parameterNames) {
+                    Variable var = functionContext.defineVariable(parameterName, i);
+                    if (i < _parameterValues.size())
+                        var.setValue(_parameterValues.get(i));
+                    i++;
+                }
+                if (_tailCall) {
+                    executionContext.replaceFunctionExecutionGroup(functionContext, function.createExecution(_line, executionContext, functionContext));
+                    // Reading the result and returning it won't be executed, as this execution has been removed,
+                    // their cost is charged now
+                    return ExecutionProgress.of(configuration.getStackGroupExecution() + configuration.getSetVariable() * _parameterValues.size()
+                            + configuration.getGetReturnValue() + configuration.getSetContextValue()
+                            + configuration.getGetContextValue() + configuration.getSetReturnValue());
+                }
+                executionContext.stackExecutionGroup(functionContext, function.createExecution(_line, executionContext, functionContext));
             }
-            executionContext.stackExecutionGroup(functionContext, function.createExecution(_line, executionContext, functionContext));
             _functionCalled = true;
-            return new ExecutionProgress(configuration.getStackGroupExecution() + configuration.getSetVariable() * _parameterValues.size());
+            return ExecutionProgress.of(configuration.getStackGroupExecution() + configuration.getSetVariable() * _parameterValues.size());
         }
         if (!_returnResultRead) {
-            final Variable returnValue = executionContext.getReturnValue();
+            // Native function sets its result as the context value
+            final Variable returnValue = _nativeFunctionCalled ? executionContext.getContextValue() : executionContext.getReturnValue();
             executionContext.setContextValue(returnValue);
             executionContext.resetReturnValue();
             _returnResultRead = true;
-            return new ExecutionProgress(configuration.getGetReturnValue() + configuration.getSetContextValue());
+            return ExecutionProgress.of(configuration.getGetReturnValue() + configuration.getSetContextValue());
         }
         return null;
     }
@@ -55,19 +55,19 @@ public class IfExecution implements Execution {
                 final ExecutableStatement statement = _conditionStatements.get(_nextStatementStackedIfNeededIndex - 1).getStatement();
                 if (statement != null)
                     executionContext.stackExecution(statement.createExecution());
-                return new ExecutionProgress(configuration.getGetContextValue() + configuration.getStackExecution());
+                return ExecutionProgress.of(configuration.getGetContextValue() + configuration.getStackExecution());
             } else
-                return new ExecutionProgress(configuration.getGetContextValue());
+                return ExecutionProgress.of(configuration.getGetContextValue());
         }
         if (_nextConditionStackedIndex < _conditionStatements.size()) {
             executionContext.stackExecution(_conditionStatements.get(_nextConditionStackedIndex).getCondition().createExecution());
             _nextConditionStackedIndex++;
-            return new ExecutionProgress(configuration.getStackExecution());
+            return ExecutionProgress.of(configuration.getStackExecution());
         }
         if (!_elseStacked) {
             executionContext.stackExecution(_elseStatement.createExecution());
             _elseStacked = true;
-            return new ExecutionProgress(configuration.getStackExecution());
+            return ExecutionProgress.of(configuration.getStackExecution());
         }
         return null;
     }
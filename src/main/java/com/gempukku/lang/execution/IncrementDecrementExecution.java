@@ -34,26 +34,12 @@ public class IncrementDecrementExecution implements Execution {
         if (!_stackedExecution) {
             executionContext.stackExecution(_expression.createExecution());
             _stackedExecution = true;
-            return new ExecutionProgress(configuration.getStackExecution());
+            return ExecutionProgress.of(configuration.getStackExecution());
         }
         final Variable contextValue = executionContext.getContextValue();
-        if (contextValue.getType() != Variable.Type.NUMBER)
-            throw new ExecutionException(_line, "Expected NUMBER");
-
-        final float original = ((Number) contextValue.getValue()).floatValue();
-        float result = original;
-        if (_pre)
-            if (_increment)
-                result += 1;
-            else
-                result -= 1;
-        if (_increment)
-            contextValue.setValue(original + 1);
-        else
-            contextValue.setValue(original - 1);
-        executionContext.setContextValue(new Variable(result));
+        executionContext.setContextValue(ValueOperations.incrementDecrement(_line, contextValue, _increment, _pre));
         _finished = true;
 
-        return new ExecutionProgress(configuration.getGetContextValue() + configuration.getSetContextValue());
+        return ExecutionProgress.of(configuration.getGetContextValue() + configuration.getSetContextValue());
     }
 }
@@ -7,8 +7,8 @@ import com.gempukku.lang.ExecutionCostConfiguration;
 import com.gempukku.lang.ExecutionException;
 import com.gempukku.lang.ExecutionProgress;
 import com.gempukku.lang.Variable;
+import com.gempukku.lang.VariableList;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class ListDefineExecution implements Execution {
@@ -18,10 +18,11 @@ public class ListDefineExecution implements Execution {
 
     private boolean _assignedResult;
 
-    private List<Variable> _result = new ArrayList<Variable>();
+    private List<Variable> _result;
 
     public ListDefineExecution(List<ExecutableStatement> executableStatements) {
         _executableStatements = executableStatements;
+        _result = new VariableList(executableStatements.size());
     }
 
     @Override
@@ -34,17 +35,17 @@ public class ListDefineExecution implements Execution {
         if (_nextRetrieveIndex < _nextStackIndex) {
             _result.add(new Variable(executionContext.getContextValue().getValue()));
             _nextRetrieveIndex++;
-            return new ExecutionProgress(configuration.getGetContextValue());
+            return ExecutionProgress.of(configuration.getGetContextValue());
         }
         if (_nextStackIndex < _executableStatements.size()) {
             executionContext.stackExecution(_executableStatements.get(_nextStackIndex).createExecution());
             _nextStackIndex++;
-            return new ExecutionProgress(configuration.getStackExecution());
+            return ExecutionProgress.of(configuration.getStackExecution());
         }
         if (!_assignedResult) {
             executionContext.setContextValue(new Variable(_result));
             _assignedResult = true;
-            return new ExecutionProgress(configuration.getSetContextValue());
+            return ExecutionProgress.of(configuration.getSetContextValue());
         }
         return null;
     }
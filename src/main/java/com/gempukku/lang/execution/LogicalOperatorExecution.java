@@ -42,7 +42,7 @@ public class LogicalOperatorExecution implements Execution {
         if (!_stackedLeft) {
             _stackedLeft = true;
             executionContext.stackExecution(_left.createExecution());
-            return new ExecutionProgress(configuration.getStackExecution());
+            return ExecutionProgress.of(configuration.getStackExecution());
         }
         if (!_resolvedLeft) {
             _resolvedLeft = true;
@@ -58,14 +58,14 @@ public class LogicalOperatorExecution implements Execution {
                 executionContext.setContextValue(new Variable(true));
             }
             if (_terminated)
-                return new ExecutionProgress(configuration.getGetContextValue() + configuration.getSetContextValue());
+                return ExecutionProgress.of(configuration.getGetContextValue() + configuration.getSetContextValue());
             else
-                return new ExecutionProgress(configuration.getGetContextValue());
+                return ExecutionProgress.of(configuration.getGetContextValue());
         }
         if (!_stackedRight) {
             _stackedRight = true;
             executionContext.stackExecution(_right.createExecution());
-            return new ExecutionProgress(configuration.getStackExecution());
+            return ExecutionProgress.of(configuration.getStackExecution());
         }
         if (!_resolvedRight) {
             _resolvedRight = true;
@@ -75,7 +75,7 @@ public class LogicalOperatorExecution implements Execution {
             _terminated = true;
             boolean result = (Boolean) contextValue.getValue();
             executionContext.setContextValue(new Variable(result));
-            return new ExecutionProgress(configuration.getGetContextValue() + configuration.getSetContextValue());
+            return ExecutionProgress.of(configuration.getGetContextValue() + configuration.getSetContextValue());
         }
         return null;
     }
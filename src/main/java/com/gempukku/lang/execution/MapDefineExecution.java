@@ -6,9 +6,10 @@ import com.gempukku.lang.ExecutionContext;
 import com.gempukku.lang.ExecutionCostConfiguration;
 import com.gempukku.lang.ExecutionException;
 import com.gempukku.lang.ExecutionProgress;
+import com.gempukku.lang.MapShape;
+import com.gempukku.lang.ShapedMap;
 import com.gempukku.lang.Variable;
 
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 
@@ -18,9 +19,10 @@ public class MapDefineExecution implements Execution {
     private boolean _hasToAssign;
 
     private boolean _finished;
-    private Map<String, Variable> _result = new HashMap<String, Variable>();
+    private Map<String, Variable> _result;
 
-    public MapDefineExecution(Map<String, ExecutableStatement> properties) {
+    public MapDefineExecution(MapShape shape, Map<String, ExecutableStatement> properties) {
+        _result = new ShapedMap(shape);
         _propertiesIterator = properties.entrySet().iterator();
     }
 
@@ -37,19 +39,19 @@ public class MapDefineExecution implements Execution {
         if (_hasToAssign) {
             _result.put(_lastKey, new Variable(executionContext.getContextValue().getValue()));
             _hasToAssign = false;
-            return new ExecutionProgress(configuration.getGetContextValue());
+            return ExecutionProgress.of(configuration.getGetContextValue());
         }
         if (_propertiesIterator.hasNext()) {
             final Map.Entry<String, ExecutableStatement> property = _propertiesIterator.next();
             _lastKey = property.getKey();
             _hasToAssign = true;
             executionContext.stackExecution(property.getValue().createExecution());
-            return new ExecutionProgress(configuration.getStackExecution());
+            return ExecutionProgress.of(configuration.getStackExecution());
         }
         if (!_finished) {
             _finished = true;
             executionContext.setContextValue(new Variable(_result));
-            return new ExecutionProgress(configuration.getSetContextValue());
+            return ExecutionProgress.of(configuration.getSetContextValue());
         }
         return null;
     }
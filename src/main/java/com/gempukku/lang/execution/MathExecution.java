@@ -15,6 +15,7 @@ public class MathExecution implements Execution {
     private Operator _operator;
     private ExecutableStatement _right;
     private boolean _assignToLeft;
+    private TypeSpecialization _specialization;
 
     private boolean _stackedLeft;
     private boolean _resolvedLeft;
@@ -23,12 +24,13 @@ public class MathExecution implements Execution {
 
     private Variable _leftValue;
 
-    public MathExecution(int line, ExecutableStatement left, Operator operator, ExecutableStatement right, boolean assignToLeft) {
+    public MathExecution(int line, ExecutableStatement left, Operator operator, ExecutableStatement right, boolean assignToLeft, TypeSpecialization specialization) {
         _line = line;
         _left = left;
         _operator = operator;
         _right = right;
         _assignToLeft = assignToLeft;
+        _specialization = specialization;
     }
 
     @Override
@@ -49,51 +51,26 @@ public class MathExecution implements Execution {
         if (!_stackedLeft) {
             executionContext.stackExecution(_left.createExecution());
             _stackedLeft = true;
-            return new ExecutionProgress(configuration.getStackExecution());
+            return ExecutionProgress.of(configuration.getStackExecution());
         }
         if (!_resolvedLeft) {
             _leftValue = executionContext.getContextValue();
             _resolvedLeft = true;
-            return new ExecutionProgress(configuration.getGetContextValue());
+            return ExecutionProgress.of(configuration.getGetContextValue());
         }
         if (!_stackedRight) {
             executionContext.stackExecution(_right.createExecution());
             _stackedRight = true;
-            return new ExecutionProgress(configuration.getStackExecution());
+            return ExecutionProgress.of(configuration.getStackExecution());
         }
         if (!_resolvedAndAssignedSum) {
             Variable rightValue = executionContext.getContextValue();
-            if (rightValue.getType() == Variable.Type.NUMBER && _leftValue.getType() == Variable.Type.NUMBER) {
-                final float valueLeft = ((Number) _leftValue.getValue()).floatValue();
-                final float valueRight = ((Number) rightValue.getValue()).floatValue();
-                Object result;
-                if (_operator == Operator.SUBTRACT || _operator == Operator.SUBTRACT_ASSIGN)
-                    result = valueLeft - valueRight;
-                else if (_operator == Operator.DIVIDE || _operator == Operator.DIVIDE_ASSIGN)
-                    result = valueLeft / valueRight;
-                else if (_operator == Operator.MULTIPLY || _operator == Operator.MULTIPLY_ASSIGN)
-                    result = valueLeft * valueRight;
-                else if (_operator == Operator.MOD || _operator == Operator.MOD_ASSIGN)
-                    result = valueLeft % valueRight;
-                else if (_operator == Operator.GREATER_OR_EQUAL)
-                    result = valueLeft >= valueRight;
-                else if (_operator == Operator.GREATER)
-                    result = valueLeft > valueRight;
-                else if (_operator == Operator.LESS_OR_EQUAL)
-                    result = valueLeft <= valueRight;
-                else if (_operator == Operator.LESS)
-                    result = valueLeft < valueRight;
-                else
-                    throw new ExecutionException(_line, "Unknown operator " + _operator);
-
-                if (_assignToLeft)
-                    _leftValue.setValue(result);
-                executionContext.setContextValue(new Variable(result));
-            } else {
-                throw new ExecutionException(_line, "Unable to perform mathematical operation on two non-number values " + _leftValue.getType() + " and " + rightValue.getType());
-            }
+            final Variable result = _specialization.math(_line, _leftValue, _operator, rightValue);
+            if (_assignToLeft)
+                executionContext.setVariableValue(_leftValue, result);
+            executionContext.setContextValue(result);
             _resolvedAndAssignedSum = true;
-            return new ExecutionProgress(configuration.getGetContextValue() + configuration.getOtherMathOperation() + configuration.getSetContextValue());
+            return ExecutionProgress.of(configuration.getGetContextValue() + configuration.getOtherMathOperation() + configuration.getSetContextValue());
         }
         return null;
     }
@@ -12,6 +12,7 @@ public class MemberAccessExecution implements Execution {
     private int _line;
     private ExecutableStatement _object;
     private String _propertyName;
+    private int _callSiteIndex;
 
     private boolean _objectStacked;
     private boolean _objectResolved;
@@ -20,10 +21,11 @@ public class MemberAccessExecution implements Execution {
 
     private Variable _objectValue;
 
-    public MemberAccessExecution(int line, ExecutableStatement object, String propertyName) {
+    public MemberAccessExecution(int line, ExecutableStatement object, String propertyName, int callSiteIndex) {
         _line = line;
         _object = object;
         _propertyName = propertyName;
+        _callSiteIndex = callSiteIndex;
     }
 
     @Override
@@ -42,20 +44,24 @@ public class MemberAccessExecution implements Execution {
         if (!_objectStacked) {
             executionContext.stackExecution(_object.createExecution());
             _objectStacked = true;
-            return new ExecutionProgress(configuration.getStackExecution());
+            return ExecutionProgress.of(configuration.getStackExecution());
         }
         if (!_objectResolved) {
             _objectValue = executionContext.getContextValue();
             _objectResolved = true;
-            return new ExecutionProgress(configuration.getGetContextValue());
+            return ExecutionProgress.of(configuration.getGetContextValue());
         }
         if (!_memberAccessStored) {
-            final Variable member = executionContext.resolveMember(_objectValue, _propertyName);
+            final Variable member;
+            if (_callSiteIndex >= 0)
+                member = executionContext.resolveMember(_objectValue, _propertyName, _callSiteIndex);
+            else
+                member = executionContext.resolveMember(_objectValue, _propertyName);
             if (member == null)
                 throw new ExecutionException(_line, "Property " + _propertyName + " not found");
             executionContext.setContextValue(member);
             _memberAccessStored = true;
-            return new ExecutionProgress(configuration.getSetContextValue() + configuration.getResolveMember());
+            return ExecutionProgress.of(configuration.getSetContextValue() + configuration.getResolveMember());
         }
         return null;
     }
@@ -10,10 +10,15 @@ import java.util.List;
 
 public class MultiStatementExecution implements Execution {
     private List<ExecutableStatement> _statements;
-    private int _nextIndex = 0;
+    private int _nextIndex;
 
     public MultiStatementExecution(List<ExecutableStatement> statements) {
+        this(statements, 0);
+    }
+
+    public MultiStatementExecution(List<ExecutableStatement> statements, int startIndex) {
         _statements = statements;
+        _nextIndex = startIndex;
     }
 
     public boolean hasNextExecution(ExecutionContext executionContext) {
@@ -25,6 +30,6 @@ public class MultiStatementExecution implements Execution {
         Execution execution = executableStatement.createExecution();
         executionContext.stackExecution(execution);
         _nextIndex++;
-        return new ExecutionProgress(configuration.getStackExecution());
+        return ExecutionProgress.of(configuration.getStackExecution());
     }
 }
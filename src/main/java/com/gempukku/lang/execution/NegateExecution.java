@@ -6,7 +6,6 @@ import com.gempukku.lang.ExecutionContext;
 import com.gempukku.lang.ExecutionCostConfiguration;
 import com.gempukku.lang.ExecutionException;
 import com.gempukku.lang.ExecutionProgress;
-import com.gempukku.lang.Variable;
 
 public class NegateExecution implements Execution {
     private int _line;
@@ -34,15 +33,12 @@ public class NegateExecution implements Execution {
         if (!_stackedExpression) {
             _stackedExpression = true;
             executionContext.stackExecution(_expression.createExecution());
-            return new ExecutionProgress(configuration.getStackExecution());
+            return ExecutionProgress.of(configuration.getStackExecution());
         }
         if (!_assignedValue) {
             _assignedValue = true;
-            final Variable contextValue = executionContext.getContextValue();
-            if (contextValue.getType() != Variable.Type.BOOLEAN)
-                throw new ExecutionException(_line, "Expected BOOLEAN");
-            executionContext.setContextValue(new Variable(!(Boolean) contextValue.getValue()));
-            return new ExecutionProgress(configuration.getGetContextValue() + configuration.getSetContextValue());
+            executionContext.setContextValue(ValueOperations.negate(_line, executionContext.getContextValue()));
+            return ExecutionProgress.of(configuration.getGetContextValue() + configuration.getSetContextValue());
         }
         return null;
     }
@@ -31,12 +31,12 @@ public class ReturnExecution implements Execution {
         if (!_stackedExecution) {
             executionContext.stackExecution(_result.createExecution());
             _stackedExecution = true;
-            return new ExecutionProgress(configuration.getStackExecution());
+            return ExecutionProgress.of(configuration.getStackExecution());
         }
         if (!_returnedResult) {
             executionContext.setReturnValue(executionContext.getContextValue());
             _returnedResult = true;
-            return new ExecutionProgress(configuration.getGetContextValue() + configuration.getSetReturnValue());
+            return ExecutionProgress.of(configuration.getGetContextValue() + configuration.getSetReturnValue());
         }
         return null;
     }
@@ -0,0 +1,86 @@
+package com.gempukku.lang.execution;
+
+import com.gempukku.lang.ExecutionException;
+import com.gempukku.lang.Operator;
+import com.gempukku.lang.Variable;
+
+/**
+ * Type feedback of a single operation in a program. On its first execution the operation specializes itself for
+ * the types of values it was executed with. If a later execution fails the type guard of the specialization, the
+ * operation falls back to the generic implementation for good.
+ */
+public class TypeSpecialization {
+    public static final int UNINITIALIZED = 0;
+    public static final int NUMBERS = 1;
+    public static final int STRING = 2;
+    public static final int GENERIC = 3;
+
+    private int _state;
+
+    public TypeSpecialization() {
+        this(UNINITIALIZED);
+    }
+
+    public TypeSpecialization(int state) {
+        _state = state;
+    }
+
+    public Variable add(int line, Variable left, Variable right) throws ExecutionException {
+        if (_state == NUMBERS) {
+            if (isNumbers(left, right))
+                return ValueOperations.addNumbers(left, right);
+            _state = GENERIC;
+        } else if (_state == STRING) {
+            if (left.getType() == Variable.Type.STRING)
+                return ValueOperations.addToString(left, right);
+            _state = GENERIC;
+        } else if (_state == UNINITIALIZED) {
+            _state = specializeAdd(left, right);
+        }
+        return ValueOperations.add(line, left, right);
+    }
+
+    public Variable math(int line, Variable left, Operator operator, Variable right) throws ExecutionException {
+        if (_state == NUMBERS) {
+            if (isNumbers(left, right))
+                return ValueOperations.mathNumbers(line, left, operator, right);
+            _state = GENERIC;
+        } else if (_state == UNINITIALIZED) {
+            _state = specializeNumbers(left, right);
+        }
+        return ValueOperations.math(line, left, operator, right);
+    }
+
+    public Variable compare(Variable left, Operator operator, Variable right) {
+        if (_state == NUMBERS) {
+            if (isNumbers(left, right))
+                return ValueOperations.compareNumbers(left, operator, right);
+            _state = GENERIC;
+        } else if (_state == UNINITIALIZED) {
+            _state = specializeNumbers(left, right);
+        }
+        return ValueOperations.compare(left, operator, right);
+    }
+
+    /**
+     * Returns the specialization of add operation for the specified values.
+     */
+    public static int specializeAdd(Variable left, Variable right) {
+        if (left.getType() == Variable.Type.STRING)
+            return STRING;
+        return specializeNumbers(left, right);
+    }
+
+    /**
+     * Returns the specialization of mathematical operation or comparison for the specified values.
+     */
+    public static int specializeNumbers(Variable left, Variable right) {
+        if (isNumbers(left, right))
+            return NUMBERS;
+        return GENERIC;
+    }
+
+    public static boolean isNumbers(Variable left, Variable right) {
+        return left.getType() == Variable.Type.NUMBER && right.getType() == Variable.Type.NUMBER;
+    }
+}
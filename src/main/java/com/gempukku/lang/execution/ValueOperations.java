@@ -0,0 +1,344 @@
+package com.gempukku.lang.execution;
+
+import com.gempukku.lang.ExecutionContext;
+import com.gempukku.lang.ExecutionException;
+import com.gempukku.lang.Operator;
+import com.gempukku.lang.Variable;
+import com.gempukku.lang.VariableList;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Semantics of the language operators, shared by the executions of the statement tree and compiled expressions.
+ */
+public final class ValueOperations {
+    // Text of small non-negative integer numbers, which are most commonly converted to string (counters, indexes)
+    private static final String[] NUMBER_STRINGS = new String[1024];
+    private static final String[] INTEGER_STRINGS = new String[1024];
+    private static final int NEGATIVE_ZERO_BITS = Float.floatToRawIntBits(-0f);
+
+    static {
+        for (int i = 0; i < NUMBER_STRINGS.length; i++) {
+            NUMBER_STRINGS[i] = String.valueOf((float) i);
+            INTEGER_STRINGS[i] = String.valueOf(i);
+        }
+    }
+
+    private ValueOperations() {
+    }
+
+    public static Variable add(int line, Variable left, Variable right) throws ExecutionException {
+        if (left.getType() == Variable.Type.STRING)
+            return addToString(left, right);
+        else if (right.getType() == Variable.Type.NUMBER && left.getType() == Variable.Type.NUMBER)
+            return addNumbers(left, right);
+        else
+            throw new ExecutionException(line, "Unable to add two values of types " + left.getType() + " and " + right.getType());
+    }
+
+    /**
+     * Adds two values, with the left one being a STRING.
+     */
+    public static Variable addToString(Variable left, Variable right) {
+        return left.appendString(convertToString(right));
+    }
+
+    /**
+     * Adds two values, both being NUMBER. The result is an integer, if both values are integers and the sum does not
+     * overflow.
+     */
+    public static Variable addNumbers(Variable left, Variable right) {
+        if (left.isInteger() && right.isInteger()) {
+            try {
+                return Variable.createInteger(Math.addExact(left.getInteger(), right.getInteger()));
+            } catch (ArithmeticException exp) {
+                // Falls back to float
+            }
+        }
+        return Variable.createNumber(left.getNumber() + right.getNumber());
+    }
+
+    public static Variable math(int line, Variable left, Operator operator, Variable right) throws ExecutionException {
+        if (right.getType() != Variable.Type.NUMBER || left.getType() != Variable.Type.NUMBER)
+            throw new ExecutionException(line, "Unable to perform mathematical operation on two non-number values " + left.getType() + " and " + right.getType());
+        return mathNumbers(line, left, operator, right);
+    }
+
+    /**
+     * Performs mathematical operation on two values, both being NUMBER. If both values are integers, the operation
+     * is performed on integers, unless its result is not an integer (division with a remainder, division by zero)
+     * or does not fit into 64 bits.
+     */
+    public static Variable mathNumbers(int line, Variable left, Operator operator, Variable right) throws ExecutionException {
+        if (left.isInteger() && right.isInteger())
+            return mathIntegers(line, left.getInteger(), operator, right.getInteger());
+        if (isBitwise(operator))
+            return bitwise(line, left, operator, right);
+        final float valueLeft = left.getNumber();
+        final float valueRight = right.getNumber();
+        float result;
+        if (operator == Operator.SUBTRACT || operator == Operator.SUBTRACT_ASSIGN)
+            result = valueLeft - valueRight;
+        else if (operator == Operator.DIVIDE || operator == Operator.DIVIDE_ASSIGN)
+            result = valueLeft / valueRight;
+        else if (operator == Operator.MULTIPLY || operator == Operator.MULTIPLY_ASSIGN)
+            result = valueLeft * valueRight;
+        else if (operator == Operator.MOD || operator == Operator.MOD_ASSIGN)
+            result = valueLeft % valueRight;
+        else if (operator == Operator.GREATER_OR_EQUAL)
+            return new Variable(toDouble(left) >= toDouble(right));
+        else if (operator == Operator.GREATER)
+            return new Variable(toDouble(left) > toDouble(right));
+        else if (operator == Operator.LESS_OR_EQUAL)
+            return new Variable(toDouble(left) <= toDouble(right));
+        else if (operator == Operator.LESS)
+            return new Variable(toDouble(left) < toDouble(right));
+        else
+            throw new ExecutionException(line, "Unknown operator " + operator);
+        return Variable.createNumber(result);
+    }
+
+    // Integer values are compared with floats without rounding them to float first
+    private static double toDouble(Variable value) {
+        return value.isInteger() ? value.getInteger() : value.getNumber();
+    }
+
+    private static Variable mathIntegers(int line, long valueLeft, Operator operator, long valueRight) throws ExecutionException {
+        if (operator == Operator.SUBTRACT || operator == Operator.SUBTRACT_ASSIGN) {
+            try {
+                return Variable.createInteger(Math.subtractExact(valueLeft, valueRight));
+            } catch (ArithmeticException exp) {
+                return Variable.createNumber((float) valueLeft - (float) valueRight);
+            }
+        } else if (operator == Operator.MULTIPLY || operator == Operator.MULTIPLY_ASSIGN) {
+            try {
+                return Variable.createInteger(Math.multiplyExact(valueLeft, valueRight));
+            } catch (ArithmeticException exp) {
+                return Variable.createNumber((float) valueLeft * (float) valueRight);
+            }
+        } else if (operator == Operator.DIVIDE || operator == Operator.DIVIDE_ASSIGN) {
+            // Long.MIN_VALUE / -1 overflows
+            if (valueRight != 0 && valueLeft % valueRight == 0 && (valueLeft != Long.MIN_VALUE || valueRight != -1))
+                return Variable.createInteger(valueLeft / valueRight);
+            return Variable.createNumber((float) valueLeft / valueRight);
+        } else if (operator == Operator.MOD || operator == Operator.MOD_ASSIGN) {
+            if (valueRight != 0)
+                return Variable.createInteger(valueLeft % valueRight);
+            return Variable.createNumber((float) valueLeft % valueRight);
+        } else if (operator == Operator.GREATER_OR_EQUAL)
+            return new Variable(valueLeft >= valueRight);
+        else if (operator == Operator.GREATER)
+            return new Variable(valueLeft > valueRight);
+        else if (operator == Operator.LESS_OR_EQUAL)
+            return new Variable(valueLeft <= valueRight);
+        else if (operator == Operator.LESS)
+            return new Variable(valueLeft < valueRight);
+        else if (isBitwise(operator))
+            return Variable.createInteger(bitwise(line, valueLeft, operator, valueRight));
+        else
+            throw new ExecutionException(line, "Unknown operator " + operator);
+    }
+
+    private static boolean isBitwise(Operator operator) {
+        return operator == Operator.BITWISE_AND || operator == Operator.BITWISE_OR || operator == Operator.BITWISE_XOR
+                || operator == Operator.SHIFT_LEFT || operator == Operator.SHIFT_RIGHT;
+    }
+
+    /**
+     * Performs bitwise operation on two NUMBER values, at least one of them being a float. Floats are accepted only
+     * if they hold an integer value.
+     */
+    private static Variable bitwise(int line, Variable left, Operator operator, Variable right) throws ExecutionException {
+        return Variable.createInteger(bitwise(line, toInteger(line, left), operator, toInteger(line, right)));
+    }
+
+    private static long toInteger(int line, Variable value) throws ExecutionException {
+        if (value.isInteger())
+            return value.getInteger();
+        final float number = value.getNumber();
+        final long integer = (long) number;
+        if (integer != number)
+            throw new ExecutionException(line, "Bitwise operation requires integer values, found " + number);
+        return integer;
+    }
+
+    /**
+     * Shifts by 64 or more bits shift out all the bits of the value, negative shift counts are not allowed.
+     */
+    private static long bitwise(int line, long valueLeft, Operator operator, long valueRight) throws ExecutionException {
+        if (operator == Operator.BITWISE_AND)
+            return valueLeft & valueRight;
+        else if (operator == Operator.BITWISE_OR)
+            return valueLeft | valueRight;
+        else if (operator == Operator.BITWISE_XOR)
+            return valueLeft ^ valueRight;
+
+        if (valueRight < 0)
+            throw new ExecutionException(line, "Negative shift count " + valueRight);
+        // Java uses only the lowest 6 bits of the shift count
+        final int shift = (int) Math.min(valueRight, 63);
+        if (operator == Operator.SHIFT_LEFT)
+            return (valueRight > 63) ? 0 : valueLeft << shift;
+        else
+            return valueLeft >> shift;
+    }
+
+    public static Variable compare(Variable left, Operator operator, Variable right) {
+        return comparisonResult(operator, valuesEqual(left, right));
+    }
+
+    /**
+     * Checks if the values are equal according to the == operator.
+     */
+    public static boolean valuesEqual(Variable left, Variable right) {
+        if (left.getType() != right.getType())
+            return false;
+        if (left.getType() == Variable.Type.STRING)
+            return left.getValue().equals(right.getValue());
+        else if (left.getType() == Variable.Type.NUMBER)
+            return numbersEqual(left, right);
+        else
+            return left.getValue() == right.getValue();
+    }
+
+    /**
+     * Orders two values, both being NUMBER or both being STRING.
+     */
+    public static int compareOrder(Variable left, Variable right) {
+        if (left.getType() == Variable.Type.STRING)
+            return ((String) left.getValue()).compareTo((String) right.getValue());
+        if (left.isInteger() && right.isInteger())
+            return Long.compare(left.getInteger(), right.getInteger());
+        return Double.compare(toDouble(left), toDouble(right));
+    }
+
+    /**
+     * Compares two values, both being NUMBER.
+     */
+    public static Variable compareNumbers(Variable left, Operator operator, Variable right) {
+        return comparisonResult(operator, numbersEqual(left, right));
+    }
+
+    private static boolean numbersEqual(Variable left, Variable right) {
+        if (left.isInteger() && right.isInteger())
+            return left.getInteger() == right.getInteger();
+        return toDouble(left) == toDouble(right);
+    }
+
+    private static Variable comparisonResult(Operator operator, boolean equals) {
+        if (equals)
+            return new Variable(operator == Operator.EQUALS);
+        else
+            return new Variable(operator == Operator.NOT_EQUALS);
+    }
+
+    public static Variable negate(int line, Variable value) throws ExecutionException {
+        if (value.getType() != Variable.Type.BOOLEAN)
+            throw new ExecutionException(line, "Expected BOOLEAN");
+        return new Variable(!(Boolean) value.getValue());
+    }
+
+    /**
+     * Increments or decrements the number stored in the variable.
+     *
+     * @return Value of the expression, the new value if pre is true, original value otherwise.
+     */
+    public static Variable incrementDecrement(int line, Variable variable, boolean increment, boolean pre) throws ExecutionException {
+        if (variable.getType() != Variable.Type.NUMBER)
+            throw new ExecutionException(line, "Expected NUMBER");
+
+        if (variable.isInteger()) {
+            final long original = variable.getInteger();
+            try {
+                final long changed = increment ? Math.incrementExact(original) : Math.decrementExact(original);
+                variable.setInteger(changed);
+                return Variable.createInteger(pre ? changed : original);
+            } catch (ArithmeticException exp) {
+                // Falls back to float
+            }
+        }
+
+        final float original = variable.getNumber();
+        final float changed = increment ? original + 1 : original - 1;
+        variable.setNumber(changed);
+        return Variable.createNumber(pre ? changed : original);
+    }
+
+    public static Variable negative(int line, Variable value) throws ExecutionException {
+        if (value.getType() != Variable.Type.NUMBER)
+            throw new ExecutionException(line, "Expected NUMBER");
+        if (value.isInteger()) {
+            try {
+                return Variable.createInteger(Math.negateExact(value.getInteger()));
+            } catch (ArithmeticException exp) {
+                // Falls back to float
+            }
+        }
+        return Variable.createNumber(-value.getNumber());
+    }
+
+    public static void validateMapOrList(int line, Variable value) throws ExecutionException {
+        if (value.getType() != Variable.Type.MAP && value.getType() != Variable.Type.LIST)
+            throw new ExecutionException(line, "Map or list expected");
+    }
+
+    /**
+     * @param assignable If the result is going to be assigned to, in which case it has to be the variable of the element,
+     *                   rather than its value.
+     */
+    public static Variable mapAccess(ExecutionContext context, int line, Variable map, Variable property, boolean assignable) throws ExecutionException {
+        if (map.getType() == Variable.Type.MAP) {
+            if (property.getType() != Variable.Type.STRING)
+                throw new ExecutionException(line, "Property name expected");
+            Map<String, Variable> properties = (Map<String, Variable>) map.getValue();
+            final String propertyName = (String) property.getValue();
+            Variable value = properties.get(propertyName);
+            if (value == null) {
+                value = new Variable(null);
+                properties.put(propertyName, value);
+                context.chargeStoredValue(properties, value);
+            }
+            return value;
+        } else {
+            if (property.getType() != Variable.Type.NUMBER)
+                throw new ExecutionException(line, "List index expected");
+            List<Variable> values = (List<Variable>) map.getValue();
+            long index = property.isInteger() ? property.getInteger() : (long) property.getNumber();
+            if (index < 0 || index >= values.size())
+                throw new ExecutionException(line, "List index out of bounds");
+            if (assignable && values instanceof VariableList)
+                return ((VariableList) values).getElementVariable((int) index);
+            return values.get((int) index);
+        }
+    }
+
+    private static String convertToString(float number) {
+        final int integer = (int) number;
+        // Negative zero has a text of its own
+        if (integer == number && integer >= 0 && integer < NUMBER_STRINGS.length && Float.floatToRawIntBits(number) != NEGATIVE_ZERO_BITS)
+            return NUMBER_STRINGS[integer];
+        return String.valueOf(number);
+    }
+
+    private static String convertToString(long integer) {
+        if (integer >= 0 && integer < INTEGER_STRINGS.length)
+            return INTEGER_STRINGS[(int) integer];
+        return String.valueOf(integer);
+    }
+
+    public static String convertToString(Variable variable) {
+        if (variable.getType() == Variable.Type.STRING)
+            return (String) variable.getValue();
+        else if (variable.isInteger())
+            return convertToString(variable.getInteger());
+        else if (variable.getType() == Variable.Type.NUMBER)
+            return convertToString(variable.getNumber());
+        else if (variable.getType() == Variable.Type.NULL)
+            return "null";
+        else if (variable.getType() == Variable.Type.BOOLEAN)
+            return ((Boolean) variable.getValue()) ? "true" : "false";
+        else
+            return "";
+    }
+}
@@ -7,20 +7,23 @@ import com.gempukku.lang.ExecutionCostConfiguration;
 import com.gempukku.lang.ExecutionException;
 import com.gempukku.lang.ExecutionProgress;
 import com.gempukku.lang.Variable;
+import com.gempukku.lang.compiler.CompiledExpression;
 
 public class WhileExecution implements Execution {
     private int _line;
     private ExecutableStatement _condition;
     private ExecutableStatement _statement;
+    private CompiledExpression _compiledCondition;
 
     private boolean _terminated;
 
     private boolean _conditionStacked;
 
-    public WhileExecution(int line, ExecutableStatement condition, ExecutableStatement statement) {
+    public WhileExecution(int line, ExecutableStatement condition, ExecutableStatement statement, CompiledExpression compiledCondition) {
         _line = line;
         _condition = condition;
         _statement = statement;
+        _compiledCondition = compiledCondition;
     }
 
     @Override
@@ -33,10 +36,12 @@ public class WhileExecution implements Execution {
 
     @Override
     public ExecutionProgress executeNextStatement(ExecutionContext executionContext, ExecutionCostConfiguration configuration) throws ExecutionException {
+        if (_compiledCondition != null)
+            return executeFusedIteration(executionContext, configuration);
         if (!_conditionStacked) {
             _conditionStacked = true;
             executionContext.stackExecution(_condition.createExecution());
-            return new ExecutionProgress(configuration.getStackExecution());
+            return ExecutionProgress.of(configuration.getStackExecution());
         }
         final Variable value = executionContext.getContextValue();
         if (value.getType() != Variable.Type.BOOLEAN)
@@ -49,8 +54,25 @@ public class WhileExecution implements Execution {
             _conditionStacked = false;
         }
         if (_terminated)
-            return new ExecutionProgress(configuration.getCompareValues() + configuration.getStackExecution());
+            return ExecutionProgress.of(configuration.getCompareValues() + configuration.getStackExecution());
         else
-            return new ExecutionProgress(configuration.getStackExecution());
+            return ExecutionProgress.of(configuration.getStackExecution());
+    }
+
+    /**
+     * Evaluates the compiled condition and stacks the statement in loop as a single step, charging the same cost
+     * as stacking the condition and checking its value in separate steps.
+     */
+    private ExecutionProgress executeFusedIteration(ExecutionContext executionContext, ExecutionCostConfiguration configuration) throws ExecutionException {
+        int cost = configuration.getStackExecution() + _compiledCondition.execute(executionContext, configuration);
+        final Variable value = executionContext.getContextValue();
+        if (value.getType() != Variable.Type.BOOLEAN)
+            throw new ExecutionException(_line, "Condition not of type BOOLEAN");
+        if ((Boolean) value.getValue()) {
+            executionContext.stackExecution(_statement.createExecution());
+            return ExecutionProgress.of(cost + configuration.getStackExecution());
+        }
+        _terminated = true;
+        return ExecutionProgress.of(cost + configuration.getCompareValues() + configuration.getStackExecution());
     }
 }
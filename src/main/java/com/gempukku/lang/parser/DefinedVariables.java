@@ -1,37 +1,168 @@
 package com.gempukku.lang.parser;
 
-import java.util.HashSet;
+import com.gempukku.lang.VariableReference;
+
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
-import java.util.Set;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
 
+/**
+ * Scopes of variables during parsing. Every scope, except for the one with predefined variables, corresponds to
+ * a CallContext created at runtime, so variables can be resolved to slots of those contexts. Elidable scopes
+ * that end up with no variables defined in them are executed in the enclosing context, references crossing such
+ * scopes are adjusted, when the scope is popped.
+ * <p/>
+ * Variables of the enclosing scopes referenced from a function are captured in its closure context, the function
+ * refers to them via slots of that context, instead of the scopes they're defined in.
+ */
 public class DefinedVariables {
-    private LinkedList<Set<String>> _variablesStack = new LinkedList<Set<String>>();
+    private LinkedList<Scope> _variablesStack = new LinkedList<Scope>();
 
     public DefinedVariables() {
-        _variablesStack.add(new HashSet<String>());
+        _variablesStack.add(new Scope(false, false, false));
     }
 
-    public void addDefinedVariable(String variableName) {
-        _variablesStack.getFirst().add(variableName);
+    /**
+     * Adds variable to the current scope.
+     *
+     * @return Index of the slot for the variable.
+     */
+    public int addDefinedVariable(String variableName) {
+        final Scope scope = _variablesStack.getFirst();
+        final int index = scope._variableCount++;
+        scope._variableIndexes.put(variableName, index);
+        return index;
     }
 
     public boolean isVariableDefined(String variableName) {
-        for (Set<String> strings : _variablesStack) {
-            if (strings.contains(variableName))
+        for (Scope scope : _variablesStack) {
+            if (scope._variableIndexes.containsKey(variableName))
                 return true;
         }
         return false;
     }
 
     public boolean isVariableDefinedInSameScope(String variableName) {
-        return _variablesStack.getFirst().contains(variableName);
+        for (Scope scope : _variablesStack) {
+            if (scope._variableIndexes.containsKey(variableName))
+                return true;
+            if (!scope._continuesParent)
+                return false;
+        }
+        return false;
+    }
+
+    public boolean hasVariablesInCurrentScope() {
+        return _variablesStack.getFirst()._variableCount > 0;
+    }
+
+    public VariableReference resolveVariable(String variableName) {
+        return resolveVariable(variableName, 0);
+    }
+
+    private VariableReference resolveVariable(String variableName, int fromScope) {
+        int depth = 0;
+        final ListIterator<Scope> scopes = _variablesStack.listIterator(fromScope);
+        while (scopes.hasNext()) {
+            final Scope scope = scopes.next();
+            final Integer index = scope._variableIndexes.get(variableName);
+            if (index != null) {
+                if (scope == _variablesStack.getLast())
+                    return VariableReference.predefined(variableName);
+                return createReference(variableName, depth, index, fromScope, scope);
+            }
+            if (scope._function) {
+                // Variable from outside of the function, it's referenced via the closure context (parent of this scope)
+                int captureIndex = scope._capturedNames.indexOf(variableName);
+                if (captureIndex == -1) {
+                    final VariableReference capturedReference = resolveVariable(variableName, scopes.nextIndex());
+                    if (capturedReference == null)
+                        return null;
+                    scope._capturedNames.add(variableName);
+                    scope._capturedReferences.add(capturedReference);
+                    captureIndex = scope._capturedNames.size() - 1;
+                }
+                return createReference(variableName, depth + 1, captureIndex, fromScope, scope);
+            }
+            depth++;
+        }
+        return null;
+    }
+
+    private VariableReference createReference(String variableName, int depth, int index, int fromScope, Scope scope) {
+        VariableReference reference = VariableReference.slot(variableName, depth, index);
+        final ListIterator<Scope> crossedScopes = _variablesStack.listIterator(fromScope);
+        while (crossedScopes.hasNext()) {
+            final Scope crossedScope = crossedScopes.next();
+            if (crossedScope == scope)
+                break;
+            if (crossedScope._elidable)
+                crossedScope._crossingReferences.add(reference);
+        }
+        return reference;
     }
 
     public void pushNewContext() {
-        _variablesStack.addFirst(new HashSet<String>());
+        pushNewContext(false);
+    }
+
+    /**
+     * @param continuesParent If the new scope is a continuation of the current one from the language point of view,
+     *                        i.e. variables defined in both are considered to be defined in the same scope.
+     */
+    public void pushNewContext(boolean continuesParent) {
+        _variablesStack.addFirst(new Scope(continuesParent, false, false));
+    }
+
+    /**
+     * Pushes a scope of parameters of a function. Variables from the scopes outside of it are captured by
+     * the function, once referenced.
+     */
+    public void pushNewFunctionContext() {
+        _variablesStack.addFirst(new Scope(false, false, true));
+    }
+
+    /**
+     * Returns references (from the scope enclosing the function) to the variables captured by the function in the
+     * current function scope, in order of their slots in the closure context.
+     */
+    public List<VariableReference> getCapturedVariables() {
+        return _variablesStack.getFirst()._capturedReferences;
+    }
+
+    /**
+     * Pushes a scope, that does not create a context at runtime, if no variables are defined in it.
+     */
+    public void pushNewElidableContext() {
+        _variablesStack.addFirst(new Scope(false, true, false));
     }
 
     public void popContext() {
-        _variablesStack.removeFirst();
+        final Scope scope = _variablesStack.removeFirst();
+        if (scope._elidable && scope._variableCount == 0) {
+            for (VariableReference crossingReference : scope._crossingReferences)
+                crossingReference.removeEnclosingScope();
+        }
+    }
+
+    private static class Scope {
+        private boolean _continuesParent;
+        private boolean _elidable;
+        private boolean _function;
+        private int _variableCount;
+        // Slot of the last variable defined with each name
+        private Map<String, Integer> _variableIndexes = new HashMap<String, Integer>();
+        private List<VariableReference> _crossingReferences = new ArrayList<VariableReference>();
+        private List<String> _capturedNames = new ArrayList<String>();
+        private List<VariableReference> _capturedReferences = new ArrayList<VariableReference>();
+
+        private Scope(boolean continuesParent, boolean elidable, boolean function) {
+            _continuesParent = continuesParent;
+            _elidable = elidable;
+            _function = function;
+        }
     }
 }
@@ -0,0 +1,199 @@
+package com.gempukku.lang.parser;
+
+import com.gempukku.lang.IllegalSyntaxException;
+
+import java.util.LinkedList;
+
+/**
+ * Splits the program text into terms and blocks in a single pass. Characters are classified using a lookup table,
+ * and the terms produced reference spans of the program text, rather than copies of it.
+ */
+class ScriptLexer {
+    private static final byte OTHER = 0;
+    private static final byte WHITESPACE = 1;
+    private static final byte LINE_END = 2;
+    private static final byte QUOTE = 3;
+    private static final byte SLASH = 4;
+    private static final byte BLOCK_OPEN = 5;
+    private static final byte BLOCK_CLOSE = 6;
+
+    private static final byte[] CHARACTER_CLASSES = new byte[128];
+
+    static {
+        for (int i = 0; i <= ' '; i++)
+            CHARACTER_CLASSES[i] = WHITESPACE;
+        CHARACTER_CLASSES['\n'] = LINE_END;
+        CHARACTER_CLASSES['\r'] = LINE_END;
+        CHARACTER_CLASSES['\"'] = QUOTE;
+        CHARACTER_CLASSES['/'] = SLASH;
+        CHARACTER_CLASSES['{'] = BLOCK_OPEN;
+        CHARACTER_CLASSES['}'] = BLOCK_CLOSE;
+    }
+
+    private char[] _text;
+    private int _length;
+    private ScriptParsingCallback _scriptParsingCallback;
+
+    private int _line;
+    private int _lineStart;
+    private int _lastTermLine;
+    private int _lastTermEndColumn;
+
+    ScriptLexer(char[] text, int length, ScriptParsingCallback scriptParsingCallback) {
+        _text = text;
+        _length = length;
+        _scriptParsingCallback = scriptParsingCallback;
+    }
+
+    static boolean isWhitespace(char c) {
+        return c <= ' ';
+    }
+
+    private static byte getCharacterClass(char c) {
+        return c < CHARACTER_CLASSES.length ? CHARACTER_CLASSES[c] : OTHER;
+    }
+
+    TermBlock lex() throws IllegalSyntaxException {
+        LinkedList<TermBlock> termBlocksStack = new LinkedList<TermBlock>();
+
+        TermBlock result = new TermBlock(0, 0);
+        TermBlock currentBlock = result;
+
+        int programStart = 0;
+        int i = 0;
+        while (i < _length) {
+            char c = _text[i];
+            switch (getCharacterClass(c)) {
+                case LINE_END:
+                    appendProgramTerm(currentBlock, programStart, i);
+                    if (c == '\r' && i + 1 < _length && _text[i + 1] == '\n')
+                        i++;
+                    i++;
+                    _line++;
+                    _lineStart = i;
+                    programStart = i;
+                    break;
+                case QUOTE:
+                    appendProgramTerm(currentBlock, programStart, i);
+                    i = lexString(currentBlock, i);
+                    programStart = i;
+                    break;
+                case SLASH:
+                    if (i + 1 < _length && _text[i + 1] == '/') {
+                        appendProgramTerm(currentBlock, programStart, i);
+                        i = lexComment(i);
+                        programStart = i;
+                    } else {
+                        i++;
+                    }
+                    break;
+                case BLOCK_OPEN:
+                    appendProgramTerm(currentBlock, programStart, i);
+                    termBlocksStack.add(currentBlock);
+                    TermBlock childBlock = new TermBlock(_line, i - _lineStart);
+                    currentBlock.addTermBlock(childBlock);
+                    currentBlock = childBlock;
+                    i++;
+                    programStart = i;
+                    break;
+                case BLOCK_CLOSE:
+                    appendProgramTerm(currentBlock, programStart, i);
+                    if (termBlocksStack.size() == 0)
+                        throw new IllegalSyntaxException(_line, i - _lineStart, "Found closing bracket for no block");
+                    currentBlock.terminateTermBlock(_line, i - _lineStart);
+                    currentBlock = termBlocksStack.removeLast();
+                    i++;
+                    programStart = i;
+                    break;
+                default:
+                    i++;
+            }
+        }
+        appendProgramTerm(currentBlock, programStart, _length);
+
+        if (termBlocksStack.size() > 0)
+            throw new IllegalSyntaxException(_lastTermLine, _lastTermEndColumn, "Unclosed bracket - }");
+
+        return result;
+    }
+
+    private void appendProgramTerm(TermBlock currentBlock, int start, int end) {
+        if (start == end)
+            return;
+        markTermEnd(end);
+
+        while (start < end && isWhitespace(_text[start]))
+            start++;
+        while (start < end && isWhitespace(_text[end - 1]))
+            end--;
+        if (start < end)
+            currentBlock.addTermBlock(new Term(Term.Type.PROGRAM, _text, start, end, _line, start - _lineStart));
+    }
+
+    /**
+     * @return Index of the first character following the String.
+     */
+    private int lexString(TermBlock currentBlock, int quoteIndex) throws IllegalSyntaxException {
+        int start = quoteIndex + 1;
+        int escapeCount = 0;
+        int i = start;
+        while (i < _length && getCharacterClass(_text[i]) != LINE_END && _text[i] != '\"') {
+            if (_text[i] == '\\') {
+                i++;
+                if (i == _length || getCharacterClass(_text[i]) == LINE_END)
+                    throw new IllegalSyntaxException(_line, i - _lineStart, "Unfinished escape sequence in String");
+                if (_text[i] != '\"' && _text[i] != '\\')
+                    throw new IllegalSyntaxException(_line, i - _lineStart, "Illegal escape sequence in String \\" + _text[i]);
+                escapeCount++;
+            }
+            i++;
+        }
+
+        Term term;
+        if (escapeCount == 0) {
+            term = new Term(Term.Type.STRING, _text, start, i, _line, start - _lineStart);
+        } else {
+            char[] value = new char[i - start - escapeCount];
+            int valueIndex = 0;
+            for (int j = start; j < i; j++) {
+                if (_text[j] == '\\')
+                    j++;
+                value[valueIndex++] = _text[j];
+            }
+            term = new Term(Term.Type.STRING, value, 0, value.length, _line, start - _lineStart);
+        }
+
+        if (i < _length && _text[i] == '\"') {
+            makeCallback(quoteIndex - _lineStart, i + 1 - quoteIndex, ScriptParsingCallback.Type.LITERAL);
+            currentBlock.addTermBlock(term);
+            i++;
+        } else if (i > start) {
+            // Unterminated String ends with the line
+            currentBlock.addTermBlock(term);
+        }
+        markTermEnd(i);
+        return i;
+    }
+
+    /**
+     * @return Index of the end of the line the comment is on.
+     */
+    private int lexComment(int start) {
+        int i = start + 2;
+        while (i < _length && getCharacterClass(_text[i]) != LINE_END)
+            i++;
+        makeCallback(start - _lineStart, i - start, ScriptParsingCallback.Type.COMMENT);
+        markTermEnd(i);
+        return i;
+    }
+
+    private void markTermEnd(int end) {
+        _lastTermLine = _line;
+        _lastTermEndColumn = end - _lineStart;
+    }
+
+    private void makeCallback(int column, int length, ScriptParsingCallback.Type type) {
+        if (_scriptParsingCallback != null)
+            _scriptParsingCallback.parsed(_line, column, length, type);
+    }
+}
@@ -7,6 +7,8 @@ import com.gempukku.lang.LangDefinition;
 import com.gempukku.lang.Operator;
 import com.gempukku.lang.ScriptExecutable;
 import com.gempukku.lang.Variable;
+import com.gempukku.lang.compiler.ExpressionCompiler;
+import com.gempukku.lang.compiler.FoldedConstant;
 import com.gempukku.lang.statement.AddStatement;
 import com.gempukku.lang.statement.AssignStatement;
 import com.gempukku.lang.statement.BlockStatement;
@@ -16,6 +18,7 @@ import com.gempukku.lang.statement.ConstantStatement;
 import com.gempukku.lang.statement.DefineAndAssignStatement;
 import com.gempukku.lang.statement.DefineFunctionStatement;
 import com.gempukku.lang.statement.DefineStatement;
+import com.gempukku.lang.statement.ForEachStatement;
 import com.gempukku.lang.statement.ForStatement;
 import com.gempukku.lang.statement.FunctionCallStatement;
 import com.gempukku.lang.statement.FunctionStatement;
@@ -31,31 +34,46 @@ import com.gempukku.lang.statement.NamedStatement;
 import com.gempukku.lang.statement.NegateStatement;
 import com.gempukku.lang.statement.NegativeStatement;
 import com.gempukku.lang.statement.ReturnStatement;
+import com.gempukku.lang.statement.SwitchStatement;
 import com.gempukku.lang.statement.VariableStatement;
 import com.gempukku.lang.statement.WhileStatement;
 import com.google.common.collect.Iterators;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 
 public class ScriptParser {
+    private boolean _optimizing;
+    private int _callSiteCount;
+
+    public ScriptParser() {
+        this(true);
+    }
+
+    /**
+     * @param optimizing If true, expressions with constant operands are folded and code that can never be executed
+     *                   is removed from the program. Optimizations don't change the cost charged for the execution.
+     */
+    public ScriptParser(boolean optimizing) {
+        _optimizing = optimizing;
+    }
+
     public ScriptExecutable parseScript(Reader reader, Set<String> preDefinedVariables, ScriptParsingCallback scriptParsingCallback) throws IllegalSyntaxException, IOException {
+        _callSiteCount = 0;
         DefinedVariables definedVariables = new DefinedVariables();
         for (String preDefinedVariable : preDefinedVariables)
             definedVariables.addDefinedVariable(preDefinedVariable);
-
-        BufferedReader bufferedReader = new BufferedReader(reader);
+        // Statements of the program are executed in a block context nested in the one with predefined variables
+        definedVariables.pushNewContext(true);
 
         ScriptExecutable result = new ScriptExecutable();
-        List<Term> terms = parseToTerms(bufferedReader, scriptParsingCallback);
-
-        TermBlock termBlockStructure = constructBlocks(terms);
+        TermBlock termBlockStructure = lexProgram(reader, scriptParsingCallback);
 
         List<ExecutableStatement> statements = seekStatementsInBlock(termBlockStructure, definedVariables, scriptParsingCallback);
         result.setStatement(new BlockStatement(statements, false, true));
@@ -77,14 +95,19 @@ public class ScriptParser {
             throw new IllegalSyntaxException(termBlock.getTerm(), "Expression expected");
         } else {
             List<ExecutableStatement> result = new LinkedList<ExecutableStatement>();
+            boolean reachable = true;
             List<TermBlock> blocks = termBlock.getTermBlocks();
             LastPeekingIterator<TermBlock> termBlockIter = new LastPeekingIterator<TermBlock>(Iterators.peekingIterator(blocks.iterator()));
             while (termBlockIter.hasNext()) {
-                if (termBlockIter.peek().isTerm() && termBlockIter.peek().getTerm().getValue().length() == 0)
+                if (termBlockIter.peek().isTerm() && termBlockIter.peek().getTerm().length() == 0)
                     termBlockIter.next();
                 else {
                     final ExecutableStatement resultStatement = produceStatementFromIterator(termBlockIter, definedVariables, scriptParsingCallback);
-                    result.add(resultStatement);
+                    // Statements following return or break in the same block are parsed, but never executed
+                    if (reachable || !_optimizing)
+                        result.add(resultStatement);
+                    if (resultStatement instanceof ReturnStatement || resultStatement instanceof BreakStatement)
+                        reachable = false;
                     if (resultStatement.requiresSemicolon())
                         consumeSemicolon(termBlockIter);
                 }
@@ -103,8 +126,7 @@ public class ScriptParser {
                 throw new IllegalSyntaxException(firstTerm, "Illegal start of statement");
             } else {
                 // It's a program term
-                final String value = firstTerm.getValue();
-                if (value.length() == 0)
+                if (firstTerm.length() == 0)
                     throw new IllegalSyntaxException(firstTerm, "Expression expected");
 
                 String literal = getFirstLiteral(firstTerm);
@@ -126,6 +148,9 @@ public class ScriptParser {
                 } else if (literal.equals("while")) {
                     makeCallback(scriptParsingCallback, firstTerm, ScriptParsingCallback.Type.KEYWORD, 5);
                     return produceWhileStatement(termIterator, definedVariables, scriptParsingCallback);
+                } else if (literal.equals("switch")) {
+                    makeCallback(scriptParsingCallback, firstTerm, ScriptParsingCallback.Type.KEYWORD, 6);
+                    return produceSwitchStatement(termIterator, definedVariables, scriptParsingCallback);
                 } else if (literal.equals("break")) {
                     makeCallback(scriptParsingCallback, firstTerm, ScriptParsingCallback.Type.KEYWORD, 5);
                     return produceBreakStatement(termIterator);
@@ -167,14 +192,19 @@ public class ScriptParser {
         validateNextTermStartingWith(termIterator, "(");
         consumeCharactersFromTerm(termIterator, 1);
 
-        ExecutableStatement condition = produceExpressionFromIterator(termIterator, definedVariables, true, scriptParsingCallback);
+        definedVariables.pushNewContext();
+        try {
+            ExecutableStatement condition = produceExpressionFromIterator(termIterator, definedVariables, true, scriptParsingCallback);
 
-        validateNextTermStartingWith(termIterator, ")");
-        consumeCharactersFromTerm(termIterator, 1);
+            validateNextTermStartingWith(termIterator, ")");
+            consumeCharactersFromTerm(termIterator, 1);
 
-        ExecutableStatement statementInLoop = produceStatementFromGroupOrTerm(termIterator, definedVariables, scriptParsingCallback);
+            ExecutableStatement statementInLoop = produceStatementFromGroupOrTerm(termIterator, definedVariables, scriptParsingCallback);
 
-        return new WhileStatement(line, condition, statementInLoop);
+            return new WhileStatement(line, condition, statementInLoop);
+        } finally {
+            definedVariables.popContext();
+        }
     }
 
     private ExecutableStatement produceForStatement(LastPeekingIterator<TermBlock> termIterator, DefinedVariables definedVariables,
@@ -188,6 +218,9 @@ public class ScriptParser {
 
         definedVariables.pushNewContext();
         try {
+            if (isNextForEachVariable(termIterator))
+                return produceForEachStatement(line, termIterator, definedVariables, scriptParsingCallback);
+
             ExecutableStatement firstStatement = null;
             if (!isNextTermStartingWith(termIterator, ";"))
                 firstStatement = produceStatementFromIterator(termIterator, definedVariables, scriptParsingCallback);
@@ -211,6 +244,101 @@ public class ScriptParser {
         }
     }
 
+    private ExecutableStatement produceSwitchStatement(LastPeekingIterator<TermBlock> termIterator, DefinedVariables definedVariables,
+                                                       ScriptParsingCallback scriptParsingCallback) throws IllegalSyntaxException {
+        consumeCharactersFromTerm(termIterator, 6);
+
+        final ExecutableStatement expression = produceConditionInBrackets(termIterator, definedVariables, scriptParsingCallback);
+        SwitchStatement switchStatement = new SwitchStatement(expression);
+
+        if (!termIterator.hasNext() || termIterator.peek().isTerm())
+            throw new IllegalSyntaxException(termIterator, "{ expected");
+        final TermBlock casesBlock = termIterator.next();
+
+        definedVariables.pushNewContext();
+        try {
+            final LastPeekingIterator<TermBlock> iterator = new LastPeekingIterator<TermBlock>(Iterators.peekingIterator(casesBlock.getTermBlocks().iterator()));
+            while (iterator.hasNext()) {
+                if (isNextLiteral(iterator, "case")) {
+                    final Term caseTerm = peekNextProgramTermSafely(iterator);
+                    makeCallback(scriptParsingCallback, caseTerm, ScriptParsingCallback.Type.KEYWORD, 4);
+                    consumeCharactersFromTerm(iterator, 4);
+                    final FoldedConstant label = FoldedConstant.fold(produceExpressionFromIterator(iterator, definedVariables, true, scriptParsingCallback));
+                    if (label == null)
+                        throw new IllegalSyntaxException(caseTerm, "Constant expected");
+                    if (!switchStatement.addCase(label.getVariable()))
+                        throw new IllegalSyntaxException(caseTerm, "Duplicate case");
+                    validateNextTermStartingWith(iterator, ":");
+                    consumeCharactersFromTerm(iterator, 1);
+                } else if (isNextLiteral(iterator, "default")) {
+                    final Term defaultTerm = peekNextProgramTermSafely(iterator);
+                    makeCallback(scriptParsingCallback, defaultTerm, ScriptParsingCallback.Type.KEYWORD, 7);
+                    if (!switchStatement.addDefaultCase())
+                        throw new IllegalSyntaxException(defaultTerm, "Duplicate default");
+                    consumeCharactersFromTerm(iterator, 7);
+                    validateNextTermStartingWith(iterator, ":");
+                    consumeCharactersFromTerm(iterator, 1);
+                } else {
+                    if (!switchStatement.hasCases())
+                        throw new IllegalSyntaxException(iterator, "case expected");
+                    final ExecutableStatement statement = produceStatementFromIterator(iterator, definedVariables, scriptParsingCallback);
+                    switchStatement.addStatement(statement);
+                    if (statement.requiresSemicolon())
+                        consumeSemicolon(iterator);
+                }
+            }
+            return switchStatement;
+        } finally {
+            definedVariables.popContext();
+        }
+    }
+
+    private boolean isNextForEachVariable(LastPeekingIterator<TermBlock> termIterator) throws IllegalSyntaxException {
+        if (!isNextLiteral(termIterator, "var"))
+            return false;
+        final Term term = peekNextProgramTermSafely(termIterator);
+        int index = skipWhitespace(term, 3);
+        if (index == term.length() || !Character.isLetter(term.charAt(index)))
+            return false;
+        while (index < term.length() && Character.isLetterOrDigit(term.charAt(index)))
+            index++;
+        index = skipWhitespace(term, index);
+        return index < term.length() && term.charAt(index) == ':';
+    }
+
+    private int skipWhitespace(Term term, int index) {
+        while (index < term.length() && ScriptLexer.isWhitespace(term.charAt(index)))
+            index++;
+        return index;
+    }
+
+    private ExecutableStatement produceForEachStatement(int line, LastPeekingIterator<TermBlock> termIterator, DefinedVariables definedVariables,
+                                                        ScriptParsingCallback scriptParsingCallback) throws IllegalSyntaxException {
+        makeCallback(scriptParsingCallback, peekNextProgramTermSafely(termIterator), ScriptParsingCallback.Type.KEYWORD, 3);
+        consumeCharactersFromTerm(termIterator, 3);
+
+        final Term variableTerm = peekNextProgramTermSafely(termIterator);
+        String variableName = getFirstLiteral(variableTerm);
+        if (LangDefinition.isReservedWord(variableName))
+            throw new IllegalSyntaxException(variableTerm, "Invalid variable name");
+        makeCallback(scriptParsingCallback, variableTerm, ScriptParsingCallback.Type.VARIABLE, variableName.length());
+        consumeCharactersFromTerm(termIterator, variableName.length());
+
+        validateNextTermStartingWith(termIterator, ":");
+        consumeCharactersFromTerm(termIterator, 1);
+
+        // Iterated expression is evaluated before the loop variable is defined
+        final ExecutableStatement iteratedExpression = produceExpressionFromIterator(termIterator, definedVariables, true, scriptParsingCallback);
+        int variableIndex = definedVariables.addDefinedVariable(variableName);
+
+        validateNextTermStartingWith(termIterator, ")");
+        consumeCharactersFromTerm(termIterator, 1);
+
+        final ExecutableStatement statementInLoop = produceStatementFromGroupOrTerm(termIterator, definedVariables, scriptParsingCallback);
+
+        return new ForEachStatement(line, variableName, variableIndex, iteratedExpression, statementInLoop);
+    }
+
     private ExecutableStatement produceIfStatement(LastPeekingIterator<TermBlock> termIterator, DefinedVariables definedVariables,
                                                    ScriptParsingCallback scriptParsingCallback) throws IllegalSyntaxException {
         int line = termIterator.peek().getTerm().getLine();
@@ -220,7 +348,9 @@ public class ScriptParser {
         ExecutableStatement condition = produceConditionInBrackets(termIterator, definedVariables, scriptParsingCallback);
 
         ExecutableStatement statement = produceStatementFromGroupOrTerm(termIterator, definedVariables, scriptParsingCallback);
-        IfStatement ifStatement = new IfStatement(line, condition, statement);
+        // Once a condition is known to be always true, the following branches are never executed
+        boolean reachable = !isConstant(condition, true);
+        IfStatement ifStatement = new IfStatement(line, condition, removeIfAlwaysFalse(condition, statement));
 
         boolean hasElse = false;
 
@@ -229,9 +359,14 @@ public class ScriptParser {
             if (isNextLiteral(termIterator, "if")) {
                 consumeCharactersFromTerm(termIterator, 2);
                 ExecutableStatement elseIfCondition = produceConditionInBrackets(termIterator, definedVariables, scriptParsingCallback);
-                ifStatement.addElseIf(elseIfCondition, produceStatementFromGroupOrTerm(termIterator, definedVariables, scriptParsingCallback));
+                ExecutableStatement elseIfStatement = produceStatementFromGroupOrTerm(termIterator, definedVariables, scriptParsingCallback);
+                if (reachable || !_optimizing)
+                    ifStatement.addElseIf(elseIfCondition, removeIfAlwaysFalse(elseIfCondition, elseIfStatement));
+                reachable &= !isConstant(elseIfCondition, true);
             } else {
-                ifStatement.addElse(produceStatementFromGroupOrTerm(termIterator, definedVariables, scriptParsingCallback));
+                ExecutableStatement elseStatement = produceStatementFromGroupOrTerm(termIterator, definedVariables, scriptParsingCallback);
+                if (reachable || !_optimizing)
+                    ifStatement.addElse(elseStatement);
                 hasElse = true;
             }
         }
@@ -239,6 +374,19 @@ public class ScriptParser {
         return ifStatement;
     }
 
+    private boolean isConstant(ExecutableStatement condition, boolean value) {
+        if (!_optimizing)
+            return false;
+        FoldedConstant foldedConstant = FoldedConstant.fold(condition);
+        return foldedConstant != null && Boolean.valueOf(value).equals(foldedConstant.getValue());
+    }
+
+    private ExecutableStatement removeIfAlwaysFalse(ExecutableStatement condition, ExecutableStatement statement) {
+        if (isConstant(condition, false))
+            return null;
+        return statement;
+    }
+
     private ExecutableStatement produceStatementFromGroupOrTerm(LastPeekingIterator<TermBlock> termIterator, DefinedVariables definedVariables,
                                                                 ScriptParsingCallback scriptParsingCallback) throws IllegalSyntaxException {
         ExecutableStatement statement;
@@ -251,11 +399,11 @@ public class ScriptParser {
             statement = produceStatementFromIterator(termIterator, definedVariables, scriptParsingCallback);
             consumeSemicolon(termIterator);
         } else {
-            definedVariables.pushNewContext();
+            definedVariables.pushNewElidableContext();
             try {
                 termIterator.next();
                 final List<ExecutableStatement> statements = seekStatementsInBlock(termBlock, definedVariables, scriptParsingCallback);
-                statement = new BlockStatement(statements, false, false);
+                statement = new BlockStatement(statements, false, false, definedVariables.hasVariablesInCurrentScope());
             } finally {
                 definedVariables.popContext();
             }
@@ -296,7 +444,7 @@ public class ScriptParser {
             throw new IllegalSyntaxException(functionDefTerm, "Variable already defined");
         consumeCharactersFromTerm(termIterator, functionName.length());
 
-        definedVariables.addDefinedVariable(functionName);
+        int functionIndex = definedVariables.addDefinedVariable(functionName);
 
         validateNextTermStartingWith(termIterator, "(");
         consumeCharactersFromTerm(termIterator, 1);
@@ -317,13 +465,20 @@ public class ScriptParser {
         if (functionBodyBlock.isTerm())
             throw new IllegalSyntaxException(termIterator, "{ expected");
 
-        definedVariables.pushNewContext();
+        definedVariables.pushNewFunctionContext();
         try {
             for (String parameterName : parameterNames)
                 definedVariables.addDefinedVariable(parameterName);
 
-            final List<ExecutableStatement> functionBody = seekStatementsInBlock(functionBodyBlock, definedVariables, scriptParsingCallback);
-            return new DefineFunctionStatement(functionName, parameterNames, functionBody);
+            // Body of the function is executed in a block context nested in the one with parameters
+            definedVariables.pushNewContext(true);
+            final List<ExecutableStatement> functionBody;
+            try {
+                functionBody = seekStatementsInBlock(functionBodyBlock, definedVariables, scriptParsingCallback);
+            } finally {
+                definedVariables.popContext();
+            }
+            return new DefineFunctionStatement(functionName, functionIndex, parameterNames, functionBody, definedVariables.getCapturedVariables());
         } finally {
             definedVariables.popContext();
         }
@@ -343,11 +498,11 @@ public class ScriptParser {
 
         consumeCharactersFromTerm(termIterator, variableName.length());
 
-        definedVariables.addDefinedVariable(variableName);
+        int variableIndex = definedVariables.addDefinedVariable(variableName);
 
         if (isNextTermStartingWith(termIterator, ";")) {
             makeCallback(scriptParsingCallback, line, column, variableName.length(), ScriptParsingCallback.Type.VARIABLE);
-            return new DefineStatement(variableName);
+            return new DefineStatement(variableName, variableIndex);
         }
 
         validateNextTermStartingWith(termIterator, "=");
@@ -357,7 +512,7 @@ public class ScriptParser {
         makeCallback(scriptParsingCallback, line, column, variableName.length(), ScriptParsingCallback.Type.VARIABLE);
 
         final ExecutableStatement value = produceExpressionFromIterator(termIterator, definedVariables, true, scriptParsingCallback);
-        return new DefineAndAssignStatement(variableName, value);
+        return new DefineAndAssignStatement(variableName, variableIndex, value);
     }
 
     private ExecutableStatement produceReturnStatement(LastPeekingIterator<TermBlock> termIterator, DefinedVariables definedVariables,
@@ -365,24 +520,21 @@ public class ScriptParser {
         consumeCharactersFromTerm(termIterator, 6);
         if (isNextTermStartingWith(termIterator, ";"))
             return new ReturnStatement(new ConstantStatement(new Variable(null)));
-        return new ReturnStatement(produceExpressionFromIterator(termIterator, definedVariables, true, scriptParsingCallback));
+        ExecutableStatement result = produceExpressionFromIterator(termIterator, definedVariables, true, scriptParsingCallback);
+        // Call in tail position replaces the frame of the function it's returning from
+        if (_optimizing && result instanceof FunctionCallStatement)
+            result = ((FunctionCallStatement) result).createTailCall();
+        return new ReturnStatement(result);
     }
 
     private void consumeCharactersFromTerm(LastPeekingIterator<TermBlock> termIterator, int charCount) {
-        final Term term = termIterator.peek().getTerm();
-        String termText = term.getValue();
-        int previousLength = termText.length();
-        String termRemainder = termText.substring(charCount).trim();
-        if (termRemainder.length() > 0)
-            term.setValue(termRemainder, previousLength - termRemainder.length());
-        else
+        if (!termIterator.peek().getTerm().consume(charCount))
             termIterator.next();
     }
 
     private void consumeSemicolon(LastPeekingIterator<TermBlock> termIterator) throws IllegalSyntaxException {
         Term term = peekNextProgramTermSafely(termIterator);
-        String value = term.getValue();
-        if (!value.startsWith(";"))
+        if (!term.startsWith(";"))
             throw new IllegalSyntaxException(term, "; expected");
         consumeCharactersFromTerm(termIterator, 1);
     }
@@ -399,7 +551,7 @@ public class ScriptParser {
         final ExecutableStatement executableStatement = parseExpression(line, termIterator, definedVariables, parseNextOperationToken(termIterator, definedVariables, scriptParsingCallback), Integer.MAX_VALUE, scriptParsingCallback);
         if (!acceptsVariable && executableStatement instanceof VariableStatement)
             throw new IllegalSyntaxException(termIterator, "Expression expected");
-        return executableStatement;
+        return compile(executableStatement);
     }
 
     private int getLine(LastPeekingIterator<TermBlock> termIterator) {
@@ -560,66 +712,75 @@ public class ScriptParser {
         if (!termIterator.hasNext())
             return null;
         final Term term = peekNextProgramTermSafely(termIterator);
-        String termValue = term.getValue();
         Operator operator = null;
-        if (termValue.startsWith("=="))
+        if (term.startsWith("=="))
             operator = Operator.EQUALS;
-        else if (termValue.startsWith("!="))
+        else if (term.startsWith("!="))
             operator = Operator.NOT_EQUALS;
-        else if (termValue.startsWith("="))
+        else if (term.startsWith("="))
             operator = Operator.ASSIGNMENT;
-        else if (termValue.startsWith("("))
+        else if (term.startsWith("("))
             operator = Operator.FUNCTION_CALL;
-        else if (termValue.startsWith("++"))
+        else if (term.startsWith("++"))
             if (hasLeft)
                 operator = Operator.POST_INCREMENT;
             else
                 operator = Operator.PRE_INCREMENT;
-        else if (termValue.startsWith("--"))
+        else if (term.startsWith("--"))
             if (hasLeft)
                 operator = Operator.POST_DECREMENT;
             else
                 operator = Operator.PRE_DECREMENT;
-        else if (termValue.startsWith("+="))
+        else if (term.startsWith("+="))
             operator = Operator.ADD_ASSIGN;
-        else if (termValue.startsWith("-="))
+        else if (term.startsWith("-="))
             operator = Operator.SUBTRACT_ASSIGN;
-        else if (termValue.startsWith("*="))
+        else if (term.startsWith("*="))
             operator = Operator.MULTIPLY_ASSIGN;
-        else if (termValue.startsWith("/="))
+        else if (term.startsWith("/="))
             operator = Operator.DIVIDE_ASSIGN;
-        else if (termValue.startsWith("%="))
+        else if (term.startsWith("%="))
             operator = Operator.MOD_ASSIGN;
-        else if (termValue.startsWith("+"))
+        else if (term.startsWith("+"))
             operator = Operator.ADD;
-        else if (termValue.startsWith("-")) {
+        else if (term.startsWith("-")) {
             if (hasLeft)
                 operator = Operator.SUBTRACT;
             else
                 operator = Operator.NEGATIVE;
-        } else if (termValue.startsWith("*"))
+        } else if (term.startsWith("*"))
             operator = Operator.MULTIPLY;
-        else if (termValue.startsWith("/"))
+        else if (term.startsWith("/"))
             operator = Operator.DIVIDE;
-        else if (termValue.startsWith("%"))
+        else if (term.startsWith("%"))
             operator = Operator.MOD;
-        else if (termValue.startsWith(">="))
+        else if (term.startsWith("<<"))
+            operator = Operator.SHIFT_LEFT;
+        else if (term.startsWith(">>"))
+            operator = Operator.SHIFT_RIGHT;
+        else if (term.startsWith(">="))
             operator = Operator.GREATER_OR_EQUAL;
-        else if (termValue.startsWith(">"))
+        else if (term.startsWith(">"))
             operator = Operator.GREATER;
-        else if (termValue.startsWith("<="))
+        else if (term.startsWith("<="))
             operator = Operator.LESS_OR_EQUAL;
-        else if (termValue.startsWith("<"))
+        else if (term.startsWith("<"))
             operator = Operator.LESS;
-        else if (termValue.startsWith("."))
+        else if (term.startsWith("."))
             operator = Operator.MEMBER_ACCESS;
-        else if (termValue.startsWith("&&"))
+        else if (term.startsWith("&&"))
             operator = Operator.AND;
-        else if (termValue.startsWith("||"))
+        else if (term.startsWith("||"))
             operator = Operator.OR;
-        else if (termValue.startsWith("!"))
+        else if (term.startsWith("&"))
+            operator = Operator.BITWISE_AND;
+        else if (term.startsWith("|"))
+            operator = Operator.BITWISE_OR;
+        else if (term.startsWith("^"))
+            operator = Operator.BITWISE_XOR;
+        else if (term.startsWith("!"))
             operator = Operator.NOT;
-        else if (termValue.startsWith("["))
+        else if (term.startsWith("["))
             operator = Operator.MAPPED_ACCESS;
 
         return operator;
@@ -627,17 +788,21 @@ public class ScriptParser {
 
     private ExecutableStatement produceOperation(int line, ExecutableStatement left, Operator operator, ExecutableStatement right, List<ExecutableStatement> parameters) throws IllegalSyntaxException {
         if (operator == Operator.ASSIGNMENT)
-            return new AssignStatement(left, right);
-        else if (operator == Operator.FUNCTION_CALL)
-            return new FunctionCallStatement(line, left, parameters);
+            return new AssignStatement(compile(toAssignmentTarget(left)), compile(right));
+        else if (operator == Operator.FUNCTION_CALL) {
+            // Called member is never exposed to the program, so it can be cached at the call site
+            if (left instanceof MemberAccessStatement)
+                left = ((MemberAccessStatement) left).createCallSite(_callSiteCount++);
+            return new FunctionCallStatement(line, compile(left), compileExpressions(parameters));
+        }
         else if (operator == Operator.ADD)
             return new AddStatement(line, left, right, false);
         else if (operator == Operator.ADD_ASSIGN)
-            return new AddStatement(line, left, right, true);
+            return new AddStatement(line, toAssignmentTarget(left), right, true);
         else if (operator == Operator.EQUALS || operator == Operator.NOT_EQUALS)
             return new ComparisonStatement(left, operator, right);
         else if (operator == Operator.MEMBER_ACCESS) {
-            return new MemberAccessStatement(line, left, ((NamedStatement) right).getName());
+            return new MemberAccessStatement(line, compile(left), ((NamedStatement) right).getName());
         } else if (operator == Operator.AND || operator == Operator.OR)
             return new LogicalOperatorStatement(line, left, operator, right);
         else if (operator == Operator.NOT)
@@ -647,17 +812,37 @@ public class ScriptParser {
         else if (operator == Operator.MAPPED_ACCESS) {
             return new MapAccessStatement(line, left, parameters.get(0));
         } else if (operator == Operator.PRE_INCREMENT || operator == Operator.PRE_DECREMENT) {
-            return new IncrementDecrementStatement(line, left, operator == Operator.PRE_INCREMENT, true);
+            return new IncrementDecrementStatement(line, compile(toAssignmentTarget(left)), operator == Operator.PRE_INCREMENT, true);
         } else if (operator == Operator.POST_INCREMENT || operator == Operator.POST_DECREMENT) {
-            return new IncrementDecrementStatement(line, right, operator == Operator.POST_INCREMENT, false);
+            return new IncrementDecrementStatement(line, compile(toAssignmentTarget(right)), operator == Operator.POST_INCREMENT, false);
         } else if (operator == Operator.ADD_ASSIGN || operator == Operator.SUBTRACT_ASSIGN || operator == Operator.MULTIPLY_ASSIGN
                 || operator == Operator.DIVIDE_ASSIGN || operator == Operator.MOD_ASSIGN) {
-            return new MathStatement(line, left, operator, right, true);
+            return new MathStatement(line, toAssignmentTarget(left), operator, right, true);
         } else {
             return new MathStatement(line, left, operator, right, false);
         }
     }
 
+    /**
+     * Elements of lists of numbers are not variables, unless accessed in order to be assigned to.
+     */
+    private ExecutableStatement toAssignmentTarget(ExecutableStatement target) {
+        if (target instanceof MapAccessStatement)
+            return ((MapAccessStatement) target).createAssignmentTarget();
+        return target;
+    }
+
+    private ExecutableStatement compile(ExecutableStatement statement) {
+        return ExpressionCompiler.compile(statement, _optimizing);
+    }
+
+    private List<ExecutableStatement> compileExpressions(List<ExecutableStatement> statements) {
+        List<ExecutableStatement> result = new ArrayList<ExecutableStatement>(statements.size());
+        for (ExecutableStatement statement : statements)
+            result.add(compile(statement));
+        return result;
+    }
+
     private ExecutableStatement parseNextOperationToken(LastPeekingIterator<TermBlock> termIterator, DefinedVariables definedVariables,
                                                         ScriptParsingCallback scriptParsingCallback) throws IllegalSyntaxException {
         ExecutableStatement result;
@@ -665,7 +850,8 @@ public class ScriptParser {
         if (termBlock.isTerm()) {
             Term term = termBlock.getTerm();
             if (term.getType() == Term.Type.STRING) {
-                String value = term.getValue();
+                // Interned, so that map keys given as constants are found by reference
+                String value = term.getValue().intern();
                 result = new ConstantStatement(new Variable(value));
                 // Consume the String
                 termIterator.next();
@@ -673,19 +859,18 @@ public class ScriptParser {
                 int line = term.getLine();
                 int column = term.getColumn();
                 // PROGRAM term
-                String termValue = term.getValue();
-                if (termValue.charAt(0) == '(') {
+                if (term.charAt(0) == '(') {
                     consumeCharactersFromTerm(termIterator, 1);
                     result = produceExpressionFromIterator(termIterator, definedVariables, true, scriptParsingCallback);
                     validateNextTermStartingWith(termIterator, ")");
                     consumeCharactersFromTerm(termIterator, 1);
-                } else if (Character.isDigit(termValue.charAt(0))) {
-                    String numberInStr = getNumber(termValue);
+                } else if (Character.isDigit(term.charAt(0))) {
+                    String numberInStr = getNumber(term);
                     consumeCharactersFromTerm(termIterator, numberInStr.length());
                     makeCallback(scriptParsingCallback, line, column, numberInStr.length(), ScriptParsingCallback.Type.CONSTANT);
-                    result = new ConstantStatement(new Variable(Float.parseFloat(numberInStr)));
+                    result = new ConstantStatement(new Variable(parseNumber(numberInStr)));
                 } else {
-                    if (Character.isLetter(termValue.charAt(0))) {
+                    if (Character.isLetter(term.charAt(0))) {
                         String literal = getFirstLiteral(term);
 
                         consumeCharactersFromTerm(termIterator, literal.length());
@@ -707,7 +892,7 @@ public class ScriptParser {
                             if (!definedVariables.isVariableDefined(literal))
                                 throw new IllegalSyntaxException(line, column, "Variable " + literal + " not defined in scope");
                             makeCallback(scriptParsingCallback, line, column, literal.length(), ScriptParsingCallback.Type.VARIABLE);
-                            result = new VariableStatement(literal);
+                            result = new VariableStatement(definedVariables.resolveVariable(literal));
                         }
                     } else {
                         // It might be operator
@@ -746,13 +931,20 @@ public class ScriptParser {
         if (functionBodyBlock.isTerm())
             throw new IllegalSyntaxException(termIterator, "{ expected");
 
-        definedVariables.pushNewContext();
+        definedVariables.pushNewFunctionContext();
         try {
             for (String parameterName : parameterNames)
                 definedVariables.addDefinedVariable(parameterName);
 
-            final List<ExecutableStatement> functionBody = seekStatementsInBlock(functionBodyBlock, definedVariables, scriptParsingCallback);
-            result = new FunctionStatement(parameterNames, functionBody);
+            // Body of the function is executed in a block context nested in the one with parameters
+            definedVariables.pushNewContext(true);
+            final List<ExecutableStatement> functionBody;
+            try {
+                functionBody = seekStatementsInBlock(functionBodyBlock, definedVariables, scriptParsingCallback);
+            } finally {
+                definedVariables.popContext();
+            }
+            result = new FunctionStatement(parameterNames, functionBody, definedVariables.getCapturedVariables());
         } finally {
             definedVariables.popContext();
         }
@@ -798,36 +990,47 @@ public class ScriptParser {
         return mapStatement;
     }
 
-    private String getNumber(String termValue) {
-        StringBuilder result = new StringBuilder();
+    /**
+     * Numbers without a decimal point are integers, unless they do not fit into 64 bits.
+     */
+    private Number parseNumber(String numberInStr) {
+        if (numberInStr.indexOf('.') == -1) {
+            try {
+                return Long.parseLong(numberInStr);
+            } catch (NumberFormatException exp) {
+                // Falls back to float
+            }
+        }
+        return Float.parseFloat(numberInStr);
+    }
+
+    private String getNumber(Term term) {
         boolean hasDot = false;
-        final char[] chars = termValue.toCharArray();
-        for (int i = 0; i < chars.length; i++) {
-            if (i == 0 && chars[i] == '-')
-                result.append(chars[i]);
-            else if (Character.isDigit(chars[i]))
-                result.append(chars[i]);
-            else if (chars[i] == '.' && !hasDot) {
+        int length = term.length();
+        int i = 0;
+        while (i < length) {
+            char c = term.charAt(i);
+            if (i == 0 && c == '-')
+                i++;
+            else if (Character.isDigit(c))
+                i++;
+            else if (c == '.' && !hasDot) {
                 hasDot = true;
-                result.append('.');
+                i++;
             } else
-                return result.toString();
+                break;
         }
-        return result.toString();
+        return term.substring(0, i);
     }
 
     private String getFirstLiteral(Term term) throws IllegalSyntaxException {
-        StringBuilder sb = new StringBuilder();
-        char[] chars = term.getValue().toCharArray();
-        if (!Character.isLetter(chars[0]))
+        if (!Character.isLetter(term.charAt(0)))
             throw new IllegalSyntaxException(term, "Expected expression");
-        for (char c : chars) {
-            if (Character.isLetterOrDigit(c))
-                sb.append(c);
-            else
-                return sb.toString();
-        }
-        return sb.toString();
+        int length = term.length();
+        int i = 1;
+        while (i < length && Character.isLetterOrDigit(term.charAt(i)))
+            i++;
+        return term.substring(0, i);
     }
 
     private Term peekNextProgramTermSafely(LastPeekingIterator<TermBlock> termIterator) throws IllegalSyntaxException {
@@ -862,7 +1065,7 @@ public class ScriptParser {
             if (termBlock.isTerm()) {
                 final Term term = termBlock.getTerm();
                 if (term.getType() == Term.Type.PROGRAM) {
-                    return term.getValue().startsWith(text);
+                    return term.startsWith(text);
                 }
             }
         }
@@ -883,140 +1086,15 @@ public class ScriptParser {
         }
     }
 
-    private TermBlock constructBlocks(List<Term> terms) throws IllegalSyntaxException {
-        LinkedList<TermBlock> termBlocksStack = new LinkedList<TermBlock>();
-
-        TermBlock result = new TermBlock(0, 0);
-        TermBlock currentBlock = result;
-
-        for (Term term : terms) {
-            if (term.getType() == Term.Type.PROGRAM) {
-                String value = term.getValue();
-                int columnIncrement = 0;
-
-                while (value.length() > 0) {
-                    int open = value.indexOf('{');
-                    int close = value.indexOf('}');
-                    if (open > -1 && (close < 0 || open < close)) {
-                        String before = value.substring(0, open);
-                        String after = value.substring(open + 1);
-                        if (before.length() > 0) {
-                            String beforeTrimmed = before.trim();
-                            int newColumn = columnIncrement + term.getColumn() + before.indexOf(beforeTrimmed);
-                            appendProgramTerm(currentBlock, beforeTrimmed, term.getLine(), newColumn);
-                        }
-                        termBlocksStack.add(currentBlock);
-                        TermBlock childBlock = new TermBlock(term.getLine(), open);
-                        currentBlock.addTermBlock(childBlock);
-                        currentBlock = childBlock;
-                        value = after;
-                        columnIncrement += open + 1;
-                    } else if (close > -1 && (open < 0 || close < open)) {
-                        String before = value.substring(0, close);
-                        String after = value.substring(close + 1);
-                        if (before.length() > 0) {
-                            String beforeTrimmed = before.trim();
-                            int newColumn = columnIncrement + term.getColumn() + before.indexOf(beforeTrimmed);
-                            appendProgramTerm(currentBlock, beforeTrimmed, term.getLine(), newColumn);
-                        }
-                        if (termBlocksStack.size() == 0)
-                            throw new IllegalSyntaxException(term.getLine(), close, "Found closing bracket for no block");
-                        currentBlock.terminateTermBlock(term.getLine(), close);
-                        currentBlock = termBlocksStack.removeLast();
-                        value = after;
-                        columnIncrement += close + 1;
-                    } else {
-                        String valueTrimmed = value.trim();
-                        if (valueTrimmed.length()>0) {
-                            int newColumn = columnIncrement + term.getColumn() + value.indexOf(valueTrimmed);
-                            appendProgramTerm(currentBlock, valueTrimmed, term.getLine(), newColumn);
-                        }
-                        value = "";
-                    }
-                }
-            } else if (term.getType() == Term.Type.STRING) {
-                currentBlock.addTermBlock(term);
-            }
-        }
-
-        if (termBlocksStack.size() > 0) {
-            final Term lastTerm = terms.get(terms.size() - 1);
-            throw new IllegalSyntaxException(lastTerm.getLine(), lastTerm.getColumn() + lastTerm.getValue().length(), "Unclosed bracket - }");
-        }
-
-        return result;
-    }
-
-    private void appendProgramTerm(TermBlock currentBlock, String text, int line, int column) {
-        currentBlock.addTermBlock(new Term(Term.Type.PROGRAM, text, line, column));
-    }
-
-    private List<Term> parseToTerms(BufferedReader bufferedReader, ScriptParsingCallback scriptParsingCallback) throws IOException, IllegalSyntaxException {
-        int lineNumber = 0;
-        List<Term> terms = new ArrayList<Term>();
-        String line;
-        while ((line = bufferedReader.readLine()) != null) {
-            termAndValidateLine(line, lineNumber, terms, scriptParsingCallback);
-            lineNumber++;
-        }
-        return terms;
-    }
-
-    private void termAndValidateLine(String line, int lineNumber, List<Term> resultTerms, ScriptParsingCallback scriptParsingCallback) throws IllegalSyntaxException {
-        // Remove all not needed white-space characters
-        Term.Type type = Term.Type.PROGRAM;
-        StringBuilder valueSoFar = new StringBuilder();
-        char[] lineChars = line.toCharArray();
-        int termStartColumn = 0;
-        for (int i = 0; i < lineChars.length; i++) {
-            if (type == Term.Type.PROGRAM) {
-                if (lineChars[i] == '\"') {
-                    if (valueSoFar.length() > 0)
-                        resultTerms.add(new Term(type, valueSoFar.toString(), lineNumber, termStartColumn));
-                    type = Term.Type.STRING;
-                    valueSoFar = new StringBuilder();
-                    termStartColumn = i + 1;
-                } else if (lineChars[i] == '/' && i + 1 < lineChars.length && lineChars[i + 1] == '/') {
-                    if (valueSoFar.length() > 0) {
-                        resultTerms.add(new Term(type, valueSoFar.toString(), lineNumber, termStartColumn));
-                    }
-                    type = Term.Type.COMMENT;
-                    valueSoFar = new StringBuilder();
-                    termStartColumn = i;
-                } else {
-                    valueSoFar.append(lineChars[i]);
-                }
-            } else if (type == Term.Type.STRING) {
-                if (lineChars[i] == '\"') {
-                    makeCallback(scriptParsingCallback, lineNumber, termStartColumn-1, valueSoFar.length()+2, ScriptParsingCallback.Type.LITERAL);
-                    resultTerms.add(new Term(type, valueSoFar.toString(), lineNumber, termStartColumn));
-                    type = Term.Type.PROGRAM;
-                    valueSoFar = new StringBuilder();
-                    termStartColumn = i + 1;
-                } else if (lineChars[i] == '\\') {
-                    i++;
-                    if (i < lineChars.length) {
-                        if (lineChars[i] == '\"' || lineChars[i] == '\\')
-                            valueSoFar.append(lineChars[i]);
-                        else
-                            throw new IllegalSyntaxException(lineNumber, i, "Illegal escape sequence in String \\" + lineChars[i]);
-                    } else {
-                        throw new IllegalSyntaxException(lineNumber, i, "Unfinished escape sequence in String");
-                    }
-                } else {
-                    valueSoFar.append(lineChars[i]);
-                }
-            } else {
-                valueSoFar.append(lineChars[i]);
-            }
-        }
-
-        if (valueSoFar.length() > 0) {
-            if (type == Term.Type.COMMENT) {
-                makeCallback(scriptParsingCallback, lineNumber, termStartColumn, valueSoFar.length()+1, ScriptParsingCallback.Type.COMMENT);
-            }
-
-            resultTerms.add(new Term(type, valueSoFar.toString(), lineNumber, termStartColumn));
+    private TermBlock lexProgram(Reader reader, ScriptParsingCallback scriptParsingCallback) throws IOException, IllegalSyntaxException {
+        char[] text = new char[4096];
+        int length = 0;
+        int read;
+        while ((read = reader.read(text, length, text.length - length)) != -1) {
+            length += read;
+            if (length == text.length)
+                text = Arrays.copyOf(text, text.length * 2);
         }
+        return new ScriptLexer(text, length, scriptParsingCallback).lex();
     }
 }
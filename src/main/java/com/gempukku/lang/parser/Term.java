@@ -1,16 +1,25 @@
 package com.gempukku.lang.parser;
 
+/**
+ * Span of characters of the program text. Consuming characters from the term only moves the start of the span, the
+ * program text itself is never copied.
+ */
 public class Term {
     public enum Type {PROGRAM, STRING, COMMENT}
 
     private Type _type;
-    private String _value;
+    private char[] _text;
+    private int _start;
+    private int _end;
     private int _line;
     private int _column;
+    private String _value;
 
-    public Term(Type type, String value, int line, int column) {
+    public Term(Type type, char[] text, int start, int end, int line, int column) {
         _type = type;
-        _value = value;
+        _text = text;
+        _start = start;
+        _end = end;
         _line = line;
         _column = column;
     }
@@ -20,12 +29,49 @@ public class Term {
     }
 
     public String getValue() {
+        if (_value == null)
+            _value = new String(_text, _start, _end - _start);
         return _value;
     }
 
-    public void setValue(String value, int columnIncr) {
-        _value = value;
-        _column += columnIncr;
+    public int length() {
+        return _end - _start;
+    }
+
+    public char charAt(int index) {
+        return _text[_start + index];
+    }
+
+    public boolean startsWith(String prefix) {
+        int length = prefix.length();
+        if (length > _end - _start)
+            return false;
+        for (int i = 0; i < length; i++) {
+            if (_text[_start + i] != prefix.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    public String substring(int beginIndex, int endIndex) {
+        return new String(_text, _start + beginIndex, endIndex - beginIndex);
+    }
+
+    /**
+     * Consumes the characters from the start of the term, along with any white-space following them.
+     *
+     * @return False, if nothing remained in the term, in which case the term is left unchanged.
+     */
+    public boolean consume(int charCount) {
+        int newStart = _start + charCount;
+        while (newStart < _end && ScriptLexer.isWhitespace(_text[newStart]))
+            newStart++;
+        if (newStart == _end)
+            return false;
+        _column += newStart - _start;
+        _start = newStart;
+        _value = null;
+        return true;
     }
 
     public int getLine() {
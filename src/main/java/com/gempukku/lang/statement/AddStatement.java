@@ -3,12 +3,14 @@ package com.gempukku.lang.statement;
 import com.gempukku.lang.ExecutableStatement;
 import com.gempukku.lang.Execution;
 import com.gempukku.lang.execution.AddExecution;
+import com.gempukku.lang.execution.TypeSpecialization;
 
 public class AddStatement implements ExecutableStatement {
     private int _line;
     private ExecutableStatement _left;
     private ExecutableStatement _right;
     private boolean _assignToLeft;
+    private TypeSpecialization _specialization = new TypeSpecialization();
 
     public AddStatement(int line, ExecutableStatement left, ExecutableStatement right, boolean assignToLeft) {
         _line = line;
@@ -19,11 +21,27 @@ public class AddStatement implements ExecutableStatement {
 
     @Override
     public Execution createExecution() {
-        return new AddExecution(_line, _left, _right, _assignToLeft);
+        return new AddExecution(_line, _left, _right, _assignToLeft, _specialization);
     }
 
     @Override
     public boolean requiresSemicolon() {
         return true;
     }
+
+    public int getLine() {
+        return _line;
+    }
+
+    public ExecutableStatement getLeft() {
+        return _left;
+    }
+
+    public ExecutableStatement getRight() {
+        return _right;
+    }
+
+    public boolean isAssignToLeft() {
+        return _assignToLeft;
+    }
 }
@@ -15,11 +15,21 @@ public class BlockStatement implements ExecutableStatement {
     private List<ExecutableStatement> _statements;
     private boolean _consumesBreak;
     private boolean _consumesReturn;
+    private boolean _createsContext;
 
     public BlockStatement(List<ExecutableStatement> statements, boolean consumesBreak, boolean consumesReturn) {
+        this(statements, consumesBreak, consumesReturn, true);
+    }
+
+    /**
+     * @param createsContext If the block should be executed in its own context. Block that does not define any
+     *                       variables and does not consume break nor return can be executed in the enclosing one.
+     */
+    public BlockStatement(List<ExecutableStatement> statements, boolean consumesBreak, boolean consumesReturn, boolean createsContext) {
         _statements = statements;
         _consumesBreak = consumesBreak;
         _consumesReturn = consumesReturn;
+        _createsContext = createsContext || consumesBreak || consumesReturn;
     }
 
     public Execution createExecution() {
@@ -33,10 +43,14 @@ public class BlockStatement implements ExecutableStatement {
 
             @Override
             public ExecutionProgress executeNextStatement(ExecutionContext executionContext, ExecutionCostConfiguration configuration) throws ExecutionException {
-                CallContext blockContext = new CallContext(executionContext.peekCallContext(), _consumesBreak, _consumesReturn);
-                executionContext.stackExecutionGroup(blockContext, new MultiStatementExecution(_statements));
+                if (_createsContext) {
+                    CallContext blockContext = new CallContext(executionContext.peekCallContext(), _consumesBreak, _consumesReturn);
+                    executionContext.stackExecutionGroup(blockContext, new MultiStatementExecution(_statements));
+                } else {
+                    executionContext.stackExecution(new MultiStatementExecution(_statements));
+                }
                 _stacked = true;
-                return new ExecutionProgress(configuration.getStackGroupExecution());
+                return ExecutionProgress.of(configuration.getStackGroupExecution());
             }
         };
     }
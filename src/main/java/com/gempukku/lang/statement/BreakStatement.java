@@ -15,7 +15,7 @@ public class BreakStatement implements ExecutableStatement {
             @Override
             protected ExecutionProgress execute(ExecutionContext context, ExecutionCostConfiguration configuration) throws ExecutionException {
                 context.breakBlock();
-                return new ExecutionProgress(configuration.getBreakBlock());
+                return ExecutionProgress.of(configuration.getBreakBlock());
             }
         };
     }
@@ -4,11 +4,13 @@ import com.gempukku.lang.ExecutableStatement;
 import com.gempukku.lang.Execution;
 import com.gempukku.lang.Operator;
 import com.gempukku.lang.execution.ComparisonExecution;
+import com.gempukku.lang.execution.TypeSpecialization;
 
 public class ComparisonStatement implements ExecutableStatement {
     private ExecutableStatement _left;
     private Operator _operator;
     private ExecutableStatement _right;
+    private TypeSpecialization _specialization = new TypeSpecialization();
 
     public ComparisonStatement(ExecutableStatement left, Operator operator, ExecutableStatement right) {
         _left = left;
@@ -18,11 +20,23 @@ public class ComparisonStatement implements ExecutableStatement {
 
     @Override
     public Execution createExecution() {
-        return new ComparisonExecution(_left, _operator, _right);
+        return new ComparisonExecution(_left, _operator, _right, _specialization);
     }
 
     @Override
     public boolean requiresSemicolon() {
         return false;
     }
+
+    public ExecutableStatement getLeft() {
+        return _left;
+    }
+
+    public Operator getOperator() {
+        return _operator;
+    }
+
+    public ExecutableStatement getRight() {
+        return _right;
+    }
 }
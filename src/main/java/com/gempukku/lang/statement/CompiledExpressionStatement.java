@@ -0,0 +1,43 @@
+package com.gempukku.lang.statement;
+
+import com.gempukku.lang.ExecutableStatement;
+import com.gempukku.lang.Execution;
+import com.gempukku.lang.ExecutionContext;
+import com.gempukku.lang.ExecutionCostConfiguration;
+import com.gempukku.lang.ExecutionException;
+import com.gempukku.lang.ExecutionProgress;
+import com.gempukku.lang.compiler.CompiledExpression;
+import com.gempukku.lang.execution.SimpleExecution;
+
+public class CompiledExpressionStatement implements ExecutableStatement {
+    private ExecutableStatement _sourceStatement;
+    private CompiledExpression _compiledExpression;
+
+    public CompiledExpressionStatement(ExecutableStatement sourceStatement, CompiledExpression compiledExpression) {
+        _sourceStatement = sourceStatement;
+        _compiledExpression = compiledExpression;
+    }
+
+    public ExecutableStatement getSourceStatement() {
+        return _sourceStatement;
+    }
+
+    public CompiledExpression getCompiledExpression() {
+        return _compiledExpression;
+    }
+
+    @Override
+    public Execution createExecution() {
+        return new SimpleExecution() {
+            @Override
+            protected ExecutionProgress execute(ExecutionContext context, ExecutionCostConfiguration configuration) throws ExecutionException {
+                return ExecutionProgress.of(_compiledExpression.execute(context, configuration));
+            }
+        };
+    }
+
+    @Override
+    public boolean requiresSemicolon() {
+        return _sourceStatement.requiresSemicolon();
+    }
+}
@@ -19,8 +19,9 @@ public class ConstantStatement implements ExecutableStatement {
         return new SimpleExecution() {
             @Override
             protected ExecutionProgress execute(ExecutionContext context, ExecutionCostConfiguration configuration) {
-                context.setContextValue(_value);
-                return new ExecutionProgress(configuration.getSetContextValue());
+                // Statement tree might be shared between programs, so the constant itself can't be exposed for modification
+                context.setContextValue(new Variable(_value.getValue()));
+                return ExecutionProgress.of(configuration.getSetContextValue());
             }
         };
     }
@@ -29,4 +30,8 @@ public class ConstantStatement implements ExecutableStatement {
     public boolean requiresSemicolon() {
         return true;
     }
+
+    public Variable getValue() {
+        return _value;
+    }
 }
@@ -8,10 +8,12 @@ import com.gempukku.lang.execution.DefineAndAssignExecution;
 
 public class DefineAndAssignStatement implements DefiningExecutableStatement {
     private String _name;
+    private int _index;
     private ExecutableStatement _value;
 
-    public DefineAndAssignStatement(String name, ExecutableStatement value) throws IllegalSyntaxException {
+    public DefineAndAssignStatement(String name, int index, ExecutableStatement value) throws IllegalSyntaxException {
         _name = name;
+        _index = index;
         _value = value;
     }
 
@@ -22,7 +24,7 @@ public class DefineAndAssignStatement implements DefiningExecutableStatement {
 
     @Override
     public Execution createExecution() {
-        return new DefineAndAssignExecution(_name, _value);
+        return new DefineAndAssignExecution(_name, _index, _value);
     }
 
     @Override
@@ -1,6 +1,5 @@
 package com.gempukku.lang.statement;
 
-import com.gempukku.lang.CallContext;
 import com.gempukku.lang.DefaultFunctionExecutable;
 import com.gempukku.lang.DefiningExecutableStatement;
 import com.gempukku.lang.ExecutableStatement;
@@ -11,19 +10,25 @@ import com.gempukku.lang.ExecutionException;
 import com.gempukku.lang.ExecutionProgress;
 import com.gempukku.lang.IllegalSyntaxException;
 import com.gempukku.lang.Variable;
+import com.gempukku.lang.VariableReference;
 import com.gempukku.lang.execution.SimpleExecution;
 
 import java.util.List;
 
 public class DefineFunctionStatement implements DefiningExecutableStatement {
     private String _name;
+    private int _index;
     private List<String> _parameterNames;
     private List<ExecutableStatement> _statements;
+    private List<VariableReference> _capturedVariables;
 
-    public DefineFunctionStatement(String name, List<String> parameterNames, List<ExecutableStatement> statements) throws IllegalSyntaxException {
+    public DefineFunctionStatement(String name, int index, List<String> parameterNames, List<ExecutableStatement> statements,
+                                   List<VariableReference> capturedVariables) throws IllegalSyntaxException {
         _name = name;
+        _index = index;
         _parameterNames = parameterNames;
         _statements = statements;
+        _capturedVariables = capturedVariables;
     }
 
     @Override
@@ -36,13 +41,14 @@ public class DefineFunctionStatement implements DefiningExecutableStatement {
         return new SimpleExecution() {
             @Override
             protected ExecutionProgress execute(ExecutionContext context, ExecutionCostConfiguration configuration) throws ExecutionException {
-                final DefaultFunctionExecutable functionExecutable = new DefaultFunctionExecutable(context.peekCallContext(), _parameterNames);
+                // Defined first, so the function can capture the variable to call itself
+                final Variable variable = context.defineVariable(_name, _index);
+                final DefaultFunctionExecutable functionExecutable = new DefaultFunctionExecutable(context.peekCallContext(),
+                        _capturedVariables, _parameterNames);
                 functionExecutable.setStatement(
                         new BlockStatement(_statements, false, true));
-                final CallContext callContext = context.peekCallContext();
-                final Variable variable = callContext.defineVariable(_name);
                 context.setVariableValue(variable, functionExecutable);
-                return new ExecutionProgress(configuration.getSetVariable());
+                return ExecutionProgress.of(configuration.getSetVariable());
             }
         };
     }
@@ -11,9 +11,11 @@ import com.gempukku.lang.execution.SimpleExecution;
 
 public class DefineStatement implements DefiningExecutableStatement {
     private String _name;
+    private int _index;
 
-    public DefineStatement(String name) throws IllegalSyntaxException {
+    public DefineStatement(String name, int index) throws IllegalSyntaxException {
         _name = name;
+        _index = index;
     }
 
     @Override
@@ -26,8 +28,8 @@ public class DefineStatement implements DefiningExecutableStatement {
         return new SimpleExecution() {
             @Override
             protected ExecutionProgress execute(ExecutionContext context, ExecutionCostConfiguration configuration) throws ExecutionException {
-                context.peekCallContext().defineVariable(_name);
-                return new ExecutionProgress(configuration.getDefineVariable());
+                context.defineVariable(_name, _index);
+                return ExecutionProgress.of(configuration.getDefineVariable());
             }
         };
     }
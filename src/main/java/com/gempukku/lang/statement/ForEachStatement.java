@@ -0,0 +1,45 @@
+package com.gempukku.lang.statement;
+
+import com.gempukku.lang.CallContext;
+import com.gempukku.lang.ExecutableStatement;
+import com.gempukku.lang.Execution;
+import com.gempukku.lang.ExecutionContext;
+import com.gempukku.lang.ExecutionCostConfiguration;
+import com.gempukku.lang.ExecutionException;
+import com.gempukku.lang.ExecutionProgress;
+import com.gempukku.lang.execution.ForEachExecution;
+import com.gempukku.lang.execution.SimpleExecution;
+
+public class ForEachStatement implements ExecutableStatement {
+    private int _line;
+    private String _variableName;
+    private int _variableIndex;
+    private ExecutableStatement _iteratedExpression;
+    private ExecutableStatement _statementInLoop;
+
+    public ForEachStatement(int line, String variableName, int variableIndex, ExecutableStatement iteratedExpression, ExecutableStatement statementInLoop) {
+        _line = line;
+        _variableName = variableName;
+        _variableIndex = variableIndex;
+        _iteratedExpression = iteratedExpression;
+        _statementInLoop = statementInLoop;
+    }
+
+    @Override
+    public Execution createExecution() {
+        return new SimpleExecution() {
+            @Override
+            protected ExecutionProgress execute(ExecutionContext context, ExecutionCostConfiguration configuration) throws ExecutionException {
+                CallContext forContext = new CallContext(context.peekCallContext(), true, false);
+                context.stackExecutionGroup(forContext,
+                        new ForEachExecution(_line, _variableName, _variableIndex, _iteratedExpression, _statementInLoop));
+                return ExecutionProgress.of(configuration.getStackGroupExecution());
+            }
+        };
+    }
+
+    @Override
+    public boolean requiresSemicolon() {
+        return false;
+    }
+}
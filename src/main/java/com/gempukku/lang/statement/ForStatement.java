@@ -7,6 +7,8 @@ import com.gempukku.lang.ExecutionContext;
 import com.gempukku.lang.ExecutionCostConfiguration;
 import com.gempukku.lang.ExecutionException;
 import com.gempukku.lang.ExecutionProgress;
+import com.gempukku.lang.compiler.CompiledExpression;
+import com.gempukku.lang.compiler.ExpressionCompiler;
 import com.gempukku.lang.execution.ForExecution;
 import com.gempukku.lang.execution.SimpleExecution;
 
@@ -16,6 +18,8 @@ public class ForStatement implements ExecutableStatement {
     private ExecutableStatement _terminationCondition;
     private ExecutableStatement _executedAfterEachLoop;
     private ExecutableStatement _statementInLoop;
+    private CompiledExpression _compiledTerminationCondition;
+    private CompiledExpression _compiledExecutedAfterEachLoop;
 
     public ForStatement(int line, ExecutableStatement initializationStatement, ExecutableStatement terminationCondition, ExecutableStatement executedAfterEachLoop, ExecutableStatement statementInLoop) {
         _line = line;
@@ -23,6 +27,8 @@ public class ForStatement implements ExecutableStatement {
         _terminationCondition = terminationCondition;
         _executedAfterEachLoop = executedAfterEachLoop;
         _statementInLoop = statementInLoop;
+        _compiledTerminationCondition = ExpressionCompiler.getCompiledExpression(terminationCondition);
+        _compiledExecutedAfterEachLoop = ExpressionCompiler.getCompiledExpression(executedAfterEachLoop);
     }
 
     @Override
@@ -32,8 +38,9 @@ public class ForStatement implements ExecutableStatement {
             protected ExecutionProgress execute(ExecutionContext context, ExecutionCostConfiguration configuration) throws ExecutionException {
                 CallContext forContext = new CallContext(context.peekCallContext(), true, false);
                 context.stackExecutionGroup(forContext,
-                        new ForExecution(_line, _initializationStatement, _terminationCondition, _executedAfterEachLoop, _statementInLoop));
-                return new ExecutionProgress(configuration.getStackGroupExecution());
+                        new ForExecution(_line, _initializationStatement, _terminationCondition, _executedAfterEachLoop, _statementInLoop,
+                                _compiledTerminationCondition, _compiledExecutedAfterEachLoop));
+                return ExecutionProgress.of(configuration.getStackGroupExecution());
             }
         };
     }
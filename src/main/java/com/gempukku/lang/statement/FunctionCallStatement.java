@@ -10,16 +10,30 @@ public class FunctionCallStatement implements ExecutableStatement {
     private int _line;
     private ExecutableStatement _function;
     private List<ExecutableStatement> _parameters;
+    private boolean _tailCall;
 
     public FunctionCallStatement(int line, ExecutableStatement function, List<ExecutableStatement> parameters) {
+        this(line, function, parameters, false);
+    }
+
+    private FunctionCallStatement(int line, ExecutableStatement function, List<ExecutableStatement> parameters, boolean tailCall) {
         _line = line;
         _function = function;
         _parameters = parameters;
+        _tailCall = tailCall;
+    }
+
+    /**
+     * Returns the call, that replaces the frame of the function it is made from, should be used only for a call,
+     * which result is immediately returned from that function.
+     */
+    public FunctionCallStatement createTailCall() {
+        return new FunctionCallStatement(_line, _function, _parameters, true);
     }
 
     @Override
     public Execution createExecution() {
-        return new FunctionCallExecution(_line, _function, _parameters);
+        return new FunctionCallExecution(_line, _function, _parameters, _tailCall);
     }
 
     @Override
@@ -8,6 +8,7 @@ import com.gempukku.lang.ExecutionCostConfiguration;
 import com.gempukku.lang.ExecutionException;
 import com.gempukku.lang.ExecutionProgress;
 import com.gempukku.lang.Variable;
+import com.gempukku.lang.VariableReference;
 import com.gempukku.lang.execution.SimpleExecution;
 
 import java.util.List;
@@ -15,10 +16,12 @@ import java.util.List;
 public class FunctionStatement implements ExecutableStatement {
     private List<String> _parameterNames;
     private List<ExecutableStatement> _statements;
+    private List<VariableReference> _capturedVariables;
 
-    public FunctionStatement(List<String> parameterNames, List<ExecutableStatement> statements) {
+    public FunctionStatement(List<String> parameterNames, List<ExecutableStatement> statements, List<VariableReference> capturedVariables) {
         _parameterNames = parameterNames;
         _statements = statements;
+        _capturedVariables = capturedVariables;
     }
 
     @Override
@@ -27,11 +30,11 @@ public class FunctionStatement implements ExecutableStatement {
             @Override
             protected ExecutionProgress execute(ExecutionContext context, ExecutionCostConfiguration configuration) throws ExecutionException {
                 final DefaultFunctionExecutable functionExecutable = new DefaultFunctionExecutable(context.peekCallContext(),
-                        _parameterNames);
+                        _capturedVariables, _parameterNames);
                 functionExecutable.setStatement(
                         new BlockStatement(_statements, false, true));
                 context.setContextValue(new Variable(functionExecutable));
-                return new ExecutionProgress(configuration.getSetVariable());
+                return ExecutionProgress.of(configuration.getSetVariable());
             }
         };
     }
@@ -26,4 +26,20 @@ public class IncrementDecrementStatement implements ExecutableStatement {
     public Execution createExecution() {
         return new IncrementDecrementExecution(_line, _expression, _increment, _pre);
     }
+
+    public int getLine() {
+        return _line;
+    }
+
+    public ExecutableStatement getExpression() {
+        return _expression;
+    }
+
+    public boolean isIncrement() {
+        return _increment;
+    }
+
+    public boolean isPre() {
+        return _pre;
+    }
 }
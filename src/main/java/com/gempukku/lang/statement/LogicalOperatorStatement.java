@@ -27,4 +27,20 @@ public class LogicalOperatorStatement implements ExecutableStatement {
     public boolean requiresSemicolon() {
         return false;
     }
+
+    public int getLine() {
+        return _line;
+    }
+
+    public ExecutableStatement getLeft() {
+        return _left;
+    }
+
+    public Operator getOperator() {
+        return _operator;
+    }
+
+    public ExecutableStatement getRight() {
+        return _right;
+    }
 }
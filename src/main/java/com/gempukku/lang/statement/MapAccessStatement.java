@@ -8,20 +8,50 @@ public class MapAccessStatement implements ExecutableStatement {
     private int _line;
     private ExecutableStatement _mapStatement;
     private ExecutableStatement _propertyStatement;
+    private boolean _assignable;
 
     public MapAccessStatement(int line, ExecutableStatement mapStatement, ExecutableStatement propertyStatement) {
+        this(line, mapStatement, propertyStatement, false);
+    }
+
+    private MapAccessStatement(int line, ExecutableStatement mapStatement, ExecutableStatement propertyStatement, boolean assignable) {
         _line = line;
         _mapStatement = mapStatement;
         _propertyStatement = propertyStatement;
+        _assignable = assignable;
+    }
+
+    /**
+     * Returns the access, that results in the variable of the element, which can be assigned to. Other accesses may
+     * result only in the value of the element.
+     */
+    public MapAccessStatement createAssignmentTarget() {
+        return new MapAccessStatement(_line, _mapStatement, _propertyStatement, true);
     }
 
     @Override
     public Execution createExecution() {
-        return new MapAccessExecution(_line, _mapStatement, _propertyStatement);
+        return new MapAccessExecution(_line, _mapStatement, _propertyStatement, _assignable);
     }
 
     @Override
     public boolean requiresSemicolon() {
         return false;
     }
+
+    public int getLine() {
+        return _line;
+    }
+
+    public ExecutableStatement getMapStatement() {
+        return _mapStatement;
+    }
+
+    public ExecutableStatement getPropertyStatement() {
+        return _propertyStatement;
+    }
+
+    public boolean isAssignable() {
+        return _assignable;
+    }
 }
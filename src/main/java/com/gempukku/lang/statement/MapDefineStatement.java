@@ -3,6 +3,7 @@ package com.gempukku.lang.statement;
 import com.gempukku.lang.ExecutableStatement;
 import com.gempukku.lang.Execution;
 import com.gempukku.lang.IllegalSyntaxException;
+import com.gempukku.lang.MapShape;
 import com.gempukku.lang.execution.MapDefineExecution;
 
 import java.util.LinkedHashMap;
@@ -10,6 +11,7 @@ import java.util.Map;
 
 public class MapDefineStatement implements ExecutableStatement {
     private Map<String, ExecutableStatement> _properties = new LinkedHashMap<String, ExecutableStatement>();
+    private MapShape _shape = MapShape.of();
 
     public MapDefineStatement() {
 
@@ -20,11 +22,12 @@ public class MapDefineStatement implements ExecutableStatement {
             throw new IllegalSyntaxException(line, column, "This map already contains an entry for this name");
 
         _properties.put(name, statement);
+        _shape = MapShape.of(_properties.keySet().toArray(new String[_properties.size()]));
     }
 
     @Override
     public Execution createExecution() {
-        return new MapDefineExecution(_properties);
+        return new MapDefineExecution(_shape, _properties);
     }
 
     @Override
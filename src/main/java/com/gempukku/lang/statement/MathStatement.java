@@ -4,6 +4,7 @@ import com.gempukku.lang.ExecutableStatement;
 import com.gempukku.lang.Execution;
 import com.gempukku.lang.Operator;
 import com.gempukku.lang.execution.MathExecution;
+import com.gempukku.lang.execution.TypeSpecialization;
 
 public class MathStatement implements ExecutableStatement {
     private int _line;
@@ -11,6 +12,7 @@ public class MathStatement implements ExecutableStatement {
     private Operator _operator;
     private ExecutableStatement _right;
     private boolean _assignToLeft;
+    private TypeSpecialization _specialization = new TypeSpecialization();
 
     public MathStatement(int line, ExecutableStatement left, Operator operator, ExecutableStatement right, boolean assignToLeft) {
         _line = line;
@@ -22,11 +24,31 @@ public class MathStatement implements ExecutableStatement {
 
     @Override
     public Execution createExecution() {
-        return new MathExecution(_line, _left, _operator, _right, _assignToLeft);
+        return new MathExecution(_line, _left, _operator, _right, _assignToLeft, _specialization);
     }
 
     @Override
     public boolean requiresSemicolon() {
         return false;
     }
+
+    public int getLine() {
+        return _line;
+    }
+
+    public ExecutableStatement getLeft() {
+        return _left;
+    }
+
+    public Operator getOperator() {
+        return _operator;
+    }
+
+    public ExecutableStatement getRight() {
+        return _right;
+    }
+
+    public boolean isAssignToLeft() {
+        return _assignToLeft;
+    }
 }
@@ -9,16 +9,31 @@ public class MemberAccessStatement implements ExecutableStatement {
     private int _line;
     private ExecutableStatement _object;
     private String _propertyName;
+    private int _callSiteIndex;
 
     public MemberAccessStatement(int line, ExecutableStatement object, String propertyName) throws IllegalSyntaxException {
+        this(line, object, propertyName, -1);
+    }
+
+    private MemberAccessStatement(int line, ExecutableStatement object, String propertyName, int callSiteIndex) {
         _line = line;
         _object = object;
-        _propertyName = propertyName;
+        // Property producers compare the names with literals, which is an identity check for interned names
+        _propertyName = propertyName.intern();
+        _callSiteIndex = callSiteIndex;
+    }
+
+    /**
+     * Returns the member access, that caches the resolved member in the ExecutionContext under the call site index.
+     * Should be used only for members that are called, as the cached member must not be exposed to the program.
+     */
+    public MemberAccessStatement createCallSite(int callSiteIndex) {
+        return new MemberAccessStatement(_line, _object, _propertyName, callSiteIndex);
     }
 
     @Override
     public Execution createExecution() {
-        return new MemberAccessExecution(_line, _object, _propertyName);
+        return new MemberAccessExecution(_line, _object, _propertyName, _callSiteIndex);
     }
 
     @Override
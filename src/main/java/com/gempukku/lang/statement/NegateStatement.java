@@ -22,4 +22,12 @@ public class NegateStatement implements ExecutableStatement {
     public boolean requiresSemicolon() {
         return false;
     }
+
+    public int getLine() {
+        return _line;
+    }
+
+    public ExecutableStatement getExpression() {
+        return _expression;
+    }
 }
@@ -0,0 +1,114 @@
+package com.gempukku.lang.statement;
+
+import com.gempukku.lang.CallContext;
+import com.gempukku.lang.ExecutableStatement;
+import com.gempukku.lang.Execution;
+import com.gempukku.lang.ExecutionContext;
+import com.gempukku.lang.ExecutionCostConfiguration;
+import com.gempukku.lang.ExecutionException;
+import com.gempukku.lang.ExecutionProgress;
+import com.gempukku.lang.Variable;
+import com.gempukku.lang.execution.MultiStatementExecution;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Statements of all the cases of a switch, in order of their appearance. Case labels are mapped to the index of
+ * the first statement following them, so the statement to start the execution from is found with a single lookup,
+ * execution then falls through the following cases, until break is reached.
+ */
+public class SwitchStatement implements ExecutableStatement {
+    private ExecutableStatement _expression;
+    private Map<Object, Integer> _caseStarts = new HashMap<Object, Integer>();
+    private int _defaultStart = -1;
+    private List<ExecutableStatement> _statements = new ArrayList<ExecutableStatement>();
+
+    public SwitchStatement(ExecutableStatement expression) {
+        _expression = expression;
+    }
+
+    /**
+     * @return False, if the case with the same value was already added.
+     */
+    public boolean addCase(Variable value) {
+        final Object key = getCaseKey(value);
+        if (_caseStarts.containsKey(key))
+            return false;
+        _caseStarts.put(key, _statements.size());
+        return true;
+    }
+
+    /**
+     * @return False, if the default case was already added.
+     */
+    public boolean addDefaultCase() {
+        if (_defaultStart > -1)
+            return false;
+        _defaultStart = _statements.size();
+        return true;
+    }
+
+    public boolean hasCases() {
+        return !_caseStarts.isEmpty() || _defaultStart > -1;
+    }
+
+    public void addStatement(ExecutableStatement statement) {
+        _statements.add(statement);
+    }
+
+    // Values equal according to the == operator have equal keys
+    private static Object getCaseKey(Variable value) {
+        if (value.isInteger())
+            return value.getInteger();
+        if (value.getType() == Variable.Type.NUMBER) {
+            final float number = value.getNumber();
+            // Floats equal to an integer share its key, this also makes -0 and 0 share a key
+            final long integer = (long) number;
+            if (integer == number)
+                return integer;
+            return number;
+        }
+        return value.getValue();
+    }
+
+    @Override
+    public Execution createExecution() {
+        return new Execution() {
+            private boolean _expressionStacked;
+            private boolean _caseStacked;
+
+            @Override
+            public boolean hasNextExecution(ExecutionContext executionContext) {
+                return !_caseStacked;
+            }
+
+            @Override
+            public ExecutionProgress executeNextStatement(ExecutionContext executionContext, ExecutionCostConfiguration configuration) throws ExecutionException {
+                if (!_expressionStacked) {
+                    executionContext.stackExecution(_expression.createExecution());
+                    _expressionStacked = true;
+                    return ExecutionProgress.of(configuration.getStackExecution());
+                }
+                final Variable value = executionContext.getContextValue();
+                final Integer caseStart = _caseStarts.get(getCaseKey(value));
+                int start = (caseStart != null) ? caseStart : _defaultStart;
+                _caseStacked = true;
+                int cost = configuration.getGetContextValue() + configuration.getCompareValues();
+                if (start > -1) {
+                    CallContext switchContext = new CallContext(executionContext.peekCallContext(), true, false);
+                    executionContext.stackExecutionGroup(switchContext, new MultiStatementExecution(_statements, start));
+                    cost += configuration.getStackGroupExecution();
+                }
+                return ExecutionProgress.of(cost);
+            }
+        };
+    }
+
+    @Override
+    public boolean requiresSemicolon() {
+        return false;
+    }
+}
@@ -7,27 +7,28 @@ import com.gempukku.lang.ExecutionCostConfiguration;
 import com.gempukku.lang.ExecutionException;
 import com.gempukku.lang.ExecutionProgress;
 import com.gempukku.lang.IllegalSyntaxException;
+import com.gempukku.lang.VariableReference;
 import com.gempukku.lang.execution.SimpleExecution;
 
 public class VariableStatement implements ExecutableStatement {
-    private String _name;
+    private VariableReference _variableReference;
 
-    public VariableStatement(String name) throws IllegalSyntaxException {
-        _name = name;
+    public VariableStatement(VariableReference variableReference) throws IllegalSyntaxException {
+        _variableReference = variableReference;
     }
 
     public Execution createExecution() {
         return new SimpleExecution() {
             @Override
             protected ExecutionProgress execute(ExecutionContext context, ExecutionCostConfiguration configuration) throws ExecutionException {
-                context.setContextValue(context.peekCallContext().getVariableValue(_name));
-                return new ExecutionProgress(configuration.getSetContextValue());
+                context.setContextValue(_variableReference.getVariable(context.peekCallContext()));
+                return ExecutionProgress.of(configuration.getSetContextValue());
             }
         };
     }
 
-    public String getName() {
-        return _name;
+    public VariableReference getVariableReference() {
+        return _variableReference;
     }
 
     @Override
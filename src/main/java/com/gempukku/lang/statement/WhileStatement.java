@@ -7,6 +7,8 @@ import com.gempukku.lang.ExecutionContext;
 import com.gempukku.lang.ExecutionCostConfiguration;
 import com.gempukku.lang.ExecutionException;
 import com.gempukku.lang.ExecutionProgress;
+import com.gempukku.lang.compiler.CompiledExpression;
+import com.gempukku.lang.compiler.ExpressionCompiler;
 import com.gempukku.lang.execution.SimpleExecution;
 import com.gempukku.lang.execution.WhileExecution;
 
@@ -14,11 +16,13 @@ public class WhileStatement implements ExecutableStatement {
     private int _line;
     private ExecutableStatement _condition;
     private ExecutableStatement _statement;
+    private CompiledExpression _compiledCondition;
 
     public WhileStatement(int line, ExecutableStatement condition, ExecutableStatement statement) {
         _line = line;
         _condition = condition;
         _statement = statement;
+        _compiledCondition = ExpressionCompiler.getCompiledExpression(condition);
     }
 
     @Override
@@ -28,8 +32,8 @@ public class WhileStatement implements ExecutableStatement {
             protected ExecutionProgress execute(ExecutionContext context, ExecutionCostConfiguration configuration) throws ExecutionException {
                 CallContext whileContext = new CallContext(context.peekCallContext(), true, false);
                 context.stackExecutionGroup(whileContext,
-                        new WhileExecution(_line, _condition, _statement));
-                return new ExecutionProgress(configuration.getStackGroupExecution());
+                        new WhileExecution(_line, _condition, _statement, _compiledCondition));
+                return ExecutionProgress.of(configuration.getStackGroupExecution());
             }
         };
     }
@@ -19,7 +19,6 @@ import com.gempukku.lang.CallContext;
 import com.gempukku.lang.ExecutionContext;
 import com.gempukku.lang.ExecutionCostConfiguration;
 import com.gempukku.lang.ExecutionException;
-import com.gempukku.lang.ExecutionProgress;
 import com.gempukku.lang.IllegalSyntaxException;
 import com.gempukku.lang.ListPropertyProducer;
 import com.gempukku.lang.MapPropertyProducer;
@@ -27,7 +26,7 @@ import com.gempukku.lang.ObjectPropertyProducer;
 import com.gempukku.lang.ScriptExecutable;
 import com.gempukku.lang.StringPropertyProducer;
 import com.gempukku.lang.Variable;
-import com.gempukku.lang.parser.ScriptParser;
+import com.gempukku.lang.VariableList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.terasology.rendering.nui.widgets.browser.data.ParagraphData;
@@ -37,6 +36,7 @@ import org.terasology.computer.system.common.ComputerLanguageContext;
 import org.terasology.computer.system.common.ComputerLanguageContextInitializer;
 import org.terasology.computer.system.common.ComputerModuleRegistry;
 import org.terasology.computer.system.common.DocumentedObjectDefinition;
+import org.terasology.computer.system.server.CompiledProgramCache;
 import org.terasology.computer.system.server.lang.ComputerModule;
 import org.terasology.computer.system.server.lang.os.condition.ResultAwaitingCondition;
 import org.terasology.entitySystem.entity.EntityRef;
@@ -45,13 +45,10 @@ import org.terasology.logic.location.LocationComponent;
 import org.terasology.math.geom.Vector3f;
 import org.terasology.world.block.BlockComponent;
 
-import java.io.IOException;
-import java.io.StringReader;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -59,7 +56,7 @@ import java.util.Set;
 public class ComputerContext {
     private static final Logger logger = LoggerFactory.getLogger(ComputerContext.class);
 
-    private static final int MEMORY_CHECK_INTERVAL = 50;
+    private static final String ARGS_VARIABLE = "args";
 
     private ComputerModuleRegistry computerModuleRegistry;
     private EntityRef entity;
@@ -67,7 +64,6 @@ public class ComputerContext {
     private int stackSize;
     private int memory;
 
-    private int memoryConsumptionCheckCounter;
 
     private int remainingWaitingCpuCycles;
     private long lastExecutionTime;
@@ -104,7 +100,9 @@ public class ComputerContext {
     public void executeContext() {
         if (executionContext != null) {
             long executionTime = System.currentTimeMillis();
-            logger.debug("Executing program - minTicksRemaining: " + minimumTimeRemaining + ", remainingWaitingCpuCycles: " + remainingWaitingCpuCycles);
+            if (logger.isDebugEnabled()) {
+                logger.debug("Executing program - minTicksRemaining: " + minimumTimeRemaining + ", remainingWaitingCpuCycles: " + remainingWaitingCpuCycles);
+            }
             if (minimumTimeRemaining > 0) {
                 // Decrement by the time between calls
                 minimumTimeRemaining -= (executionTime - lastExecutionTime);
@@ -131,72 +129,98 @@ public class ComputerContext {
     }
 
     public void startProgram(String name, EntityRef executeIdentity, String programText, String[] params, ComputerLanguageContextInitializer computerLanguageContextInitializer,
-                             ExecutionCostConfiguration configuration) throws IllegalSyntaxException {
-        try {
-            logger.debug("starting program: " + name);
-
-            Set<String> variables = new HashSet<>();
-
-            CallContext callContext = new CallContext(null, false, true);
-            computerLanguageContextInitializer.initializeContext(
-                    new ComputerLanguageContext() {
-                        @Override
-                        public void addObject(String object, DocumentedObjectDefinition objectDefinition, String objectDescription,
-                                              Collection<ParagraphData> additionalParagraphs) {
-                            variables.add(object);
-                            try {
-                                callContext.defineVariable(object).setValue(objectDefinition);
-                            } catch (ExecutionException exp) {
-                                // Ignore - can't happen
-                                exp.printStackTrace();
-                            }
+                             ExecutionCostConfiguration configuration, CompiledProgramCache compiledProgramCache) throws IllegalSyntaxException {
+        logger.debug("starting program: " + name);
+
+        Set<String> variables = new HashSet<>();
+
+        CallContext callContext = new CallContext(null, false, true);
+        computerLanguageContextInitializer.initializeContext(
+                new ComputerLanguageContext() {
+                    @Override
+                    public void addObject(String object, DocumentedObjectDefinition objectDefinition, String objectDescription,
+                                          Collection<ParagraphData> additionalParagraphs) {
+                        variables.add(object);
+                        try {
+                            callContext.defineVariable(object).setValue(objectDefinition);
+                        } catch (ExecutionException exp) {
+                            // Ignore - can't happen
+                            exp.printStackTrace();
                         }
+                    }
 
-                        @Override
-                        public void addObjectType(String objectType, Collection<ParagraphData> documentation) {
-                            // Ignore
-                        }
+                    @Override
+                    public void addObjectType(String objectType, Collection<ParagraphData> documentation) {
+                        // Ignore
+                    }
 
-                        @Override
-                        public void addComputerModule(ComputerModule computerModule, String description, Collection<ParagraphData> additionalParagraphs) {
-                            // Ignore
-                        }
-                    });
-            addParametersToProgram(params, variables, callContext);
+                    @Override
+                    public void addComputerModule(ComputerModule computerModule, String description, Collection<ParagraphData> additionalParagraphs) {
+                        // Ignore
+                    }
+                });
+        addParametersToProgram(params, variables, callContext);
 
-            ScriptExecutable scriptExecutable = new ScriptParser().parseScript(new StringReader(programText), variables);
+        ScriptExecutable scriptExecutable = compiledProgramCache.getCompiledProgram(programText, variables);
 
-            executionContext = new TerasologyComputerExecutionContext(configuration,
-                    getComputerCallback());
-            executionContext.addPropertyProducer(Variable.Type.MAP, new MapPropertyProducer());
-            executionContext.addPropertyProducer(Variable.Type.OBJECT, new ObjectPropertyProducer());
-            executionContext.addPropertyProducer(Variable.Type.LIST, new ListPropertyProducer());
-            executionContext.addPropertyProducer(Variable.Type.STRING, new StringPropertyProducer());
+        executionContext = new TerasologyComputerExecutionContext(configuration,
+                getComputerCallback());
+        executionContext.addPropertyProducer(Variable.Type.MAP, new MapPropertyProducer());
+        executionContext.addPropertyProducer(Variable.Type.OBJECT, new ObjectPropertyProducer());
+        executionContext.addPropertyProducer(Variable.Type.LIST, new ListPropertyProducer());
+        executionContext.addPropertyProducer(Variable.Type.STRING, new StringPropertyProducer());
 
-            executionContext.stackExecutionGroup(callContext, scriptExecutable.createExecution(callContext));
+        executionContext.stackExecutionGroup(callContext, scriptExecutable.createExecution(callContext));
 
-            executedBy = executeIdentity;
+        executedBy = executeIdentity;
 
-            this.awaitingCondition = null;
-            this.remainingWaitingCpuCycles = 0;
-            this.minimumTimeRemaining = 0;
+        this.awaitingCondition = null;
+        this.remainingWaitingCpuCycles = 0;
+        this.minimumTimeRemaining = 0;
 
-            logger.debug("started program: " + name);
-        } catch (IOException exp) {
-            // Can't happen - ignore
-            exp.printStackTrace();
-        }
+        logger.debug("started program: " + name);
+    }
+
+    /**
+     * Returns names of all the variables that are predefined for programs started on computers, this is the set
+     * programs are compiled against.
+     *
+     * @param computerLanguageContextInitializer Initializer of the language context.
+     * @return Set of predefined variable names.
+     */
+    public static Set<String> getPredefinedVariables(ComputerLanguageContextInitializer computerLanguageContextInitializer) {
+        Set<String> variables = new HashSet<>();
+        computerLanguageContextInitializer.initializeContext(
+                new ComputerLanguageContext() {
+                    @Override
+                    public void addObject(String object, DocumentedObjectDefinition objectDefinition, String objectDescription,
+                                          Collection<ParagraphData> additionalParagraphs) {
+                        variables.add(object);
+                    }
+
+                    @Override
+                    public void addObjectType(String objectType, Collection<ParagraphData> documentation) {
+                        // Ignore
+                    }
+
+                    @Override
+                    public void addComputerModule(ComputerModule computerModule, String description, Collection<ParagraphData> additionalParagraphs) {
+                        // Ignore
+                    }
+                });
+        variables.add(ARGS_VARIABLE);
+        return variables;
     }
 
     private void addParametersToProgram(String[] params, Set<String> variables, CallContext callContext) {
-        variables.add("args");
-        List<Variable> args = new LinkedList<>();
+        variables.add(ARGS_VARIABLE);
+        List<Variable> args = new VariableList(params.length);
         for (String param : params) {
             args.add(new Variable(param));
         }
 
         try {
-            callContext.defineVariable("args").setValue(args);
+            callContext.defineVariable(ARGS_VARIABLE).setValue(args);
         } catch (ExecutionException exp) {
             // Ignore - can't happen
             exp.printStackTrace();
@@ -237,6 +261,7 @@ public class ComputerContext {
             @Override
             public void suspendWithCondition(ResultAwaitingCondition condition) {
                 awaitingCondition = condition;
+                executionContext.setSuspended(true);
             }
 
             @Override
@@ -262,11 +287,11 @@ public class ComputerContext {
 
     private void executeNextProgramStepUntilRunsOutOfCycles() {
         while (!executionContext.isFinished()) {
-            logger.debug("Executing next step");
             try {
                 if (awaitingCondition != null) {
                     if (awaitingCondition.isMet()) {
                         executionContext.setContextValue(awaitingCondition.getReturnValue());
+                        executionContext.setSuspended(false);
                         awaitingCondition.dispose();
                         awaitingCondition = null;
                     } else {
@@ -274,18 +299,11 @@ public class ComputerContext {
                     }
                 }
 
-                ExecutionProgress executionProgress = executionContext.executeNext();
-
-                if (executionContext.getStackTraceSize() > stackSize) {
-                    throw new ExecutionException(-1, "StackOverflow");
-                }
-
-                if (((++memoryConsumptionCheckCounter) % MEMORY_CHECK_INTERVAL == 0) && executionContext.getMemoryUsage() > memory) {
-                    throw new ExecutionException(-1, "OutOfMemory");
-                }
+                // Runs until the accumulated cost makes the remaining waiting cycles positive, or the program gets suspended
+                executionContext.runUntil(-remainingWaitingCpuCycles, stackSize, memory);
 
-                remainingWaitingCpuCycles += executionProgress.getCost();
-                minimumTimeRemaining = executionProgress.getMinExecutionTime();
+                remainingWaitingCpuCycles += executionContext.getAccumulatedCost();
+                minimumTimeRemaining = executionContext.getMinExecutionTime();
 
                 if (minimumTimeRemaining > 0 || remainingWaitingCpuCycles > 0) {
                     // Time to break execution, we've done enough in this computer for this tick
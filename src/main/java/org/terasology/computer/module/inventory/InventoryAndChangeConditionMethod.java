@@ -16,6 +16,8 @@
 package org.terasology.computer.module.inventory;
 
 import com.gempukku.lang.ExecutionException;
+import com.gempukku.lang.MapShape;
+import com.gempukku.lang.ShapedMap;
 import com.gempukku.lang.Variable;
 import org.terasology.computer.FunctionParamValidationUtil;
 import org.terasology.computer.context.ComputerCallback;
@@ -26,11 +28,13 @@ import org.terasology.entitySystem.entity.EntityRef;
 import org.terasology.logic.inventory.InventoryUtils;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 public class InventoryAndChangeConditionMethod extends AbstractModuleMethodExecutable<Object> {
+    private static final MapShape RESULT_SHAPE = MapShape.of("inventory", "condition");
+    private static final MapShape ITEM_SHAPE = MapShape.of("name", "count");
+
     private final String methodName;
     private InventoryModuleConditionsRegister inventoryModuleConditionsRegister;
 
@@ -80,7 +84,7 @@ public class InventoryAndChangeConditionMethod extends AbstractModuleMethodExecu
         InventoryBinding.InventoryWithSlots inventory = FunctionParamValidationUtil.validateInventoryBinding(line, computer,
                 parameters, "inventoryBinding", methodName, null);
 
-        Map<String, Variable> result = new HashMap<>();
+        Map<String, Variable> result = new ShapedMap(RESULT_SHAPE);
 
         List<Variable> inventoryResult = getInventory(inventory);
         final List<Variable> inventoryCopyResult = getInventory(inventory);
@@ -137,7 +141,7 @@ public class InventoryAndChangeConditionMethod extends AbstractModuleMethodExecu
 
         for (int slot : inventory.slots) {
             EntityRef item = InventoryUtils.getItemAt(inventory.inventory, slot);
-            Map<String, Variable> itemMap = new HashMap<>();
+            Map<String, Variable> itemMap = new ShapedMap(ITEM_SHAPE);
 
             int itemCount = InventoryModuleUtils.getItemCount(item);
             String itemName = InventoryModuleUtils.getItemName(item);
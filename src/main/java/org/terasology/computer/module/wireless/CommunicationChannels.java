@@ -15,17 +15,20 @@
  */
 package org.terasology.computer.module.wireless;
 
+import com.gempukku.lang.MapShape;
+import com.gempukku.lang.ShapedMap;
 import com.gempukku.lang.Variable;
 import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import org.terasology.math.geom.Vector3i;
 
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 
 public class CommunicationChannels<T> {
+    private static final MapShape MESSAGE_SHAPE = MapShape.of("message", "distance");
+
     private Multimap<String, Message> publicMessages = LinkedHashMultimap.create();
     private Multimap<String, MessageAwaitingLatchCondition> publicConditions = LinkedHashMultimap.create();
 
@@ -227,7 +230,7 @@ public class CommunicationChannels<T> {
     }
 
     private Map<String, Variable> constructMessageReturnObject(Message messageObject, Vector3i locationTo) {
-        Map<String, Variable> messageResult = new HashMap<>();
+        Map<String, Variable> messageResult = new ShapedMap(MESSAGE_SHAPE);
         messageResult.put("message", new Variable(messageObject.message));
         messageResult.put("distance", new Variable(distance(messageObject, locationTo)));
         return messageResult;
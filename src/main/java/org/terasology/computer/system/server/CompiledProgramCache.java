@@ -0,0 +1,133 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.computer.system.server;
+
+import com.gempukku.lang.IllegalSyntaxException;
+import com.gempukku.lang.ScriptExecutable;
+import com.gempukku.lang.parser.ScriptParser;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.StringReader;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Server-wide cache of compiled programs. Programs are keyed by their text and the set of variables predefined for
+ * them, so all computers running the same program share a single (immutable) statement tree.
+ */
+public class CompiledProgramCache {
+    private static final Logger logger = LoggerFactory.getLogger(CompiledProgramCache.class);
+
+    private static final int MAXIMUM_CACHED_PROGRAMS = 512;
+
+    private Cache<ProgramKey, ScriptExecutable> compiledPrograms = CacheBuilder.newBuilder()
+            .maximumSize(MAXIMUM_CACHED_PROGRAMS).build();
+
+    private ExecutorService backgroundCompiler = Executors.newSingleThreadExecutor(
+            runnable -> {
+                Thread thread = new Thread(runnable, "ModularComputers-ProgramCompiler");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * Schedules compilation of the program in background, if it is not already compiled. Syntax errors are ignored
+     * here, they will be reported to the user when the program is executed.
+     *
+     * @param programText         Text of the program.
+     * @param predefinedVariables Variables predefined for the program.
+     */
+    public void precompileProgram(String programText, Set<String> predefinedVariables) {
+        ProgramKey programKey = new ProgramKey(programText, predefinedVariables);
+        if (compiledPrograms.getIfPresent(programKey) == null) {
+            backgroundCompiler.submit(
+                    () -> {
+                        try {
+                            getCompiledProgram(programKey);
+                        } catch (IllegalSyntaxException exp) {
+                            logger.debug("Precompiled program contains a syntax error: " + exp.getMessage());
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Returns a compiled program, compiling it if needed. If the program is being compiled in background at the
+     * moment, waits for that compilation to finish.
+     *
+     * @param programText         Text of the program.
+     * @param predefinedVariables Variables predefined for the program.
+     * @return Compiled program.
+     * @throws IllegalSyntaxException If the program contains a syntax error.
+     */
+    public ScriptExecutable getCompiledProgram(String programText, Set<String> predefinedVariables) throws IllegalSyntaxException {
+        return getCompiledProgram(new ProgramKey(programText, predefinedVariables));
+    }
+
+    private ScriptExecutable getCompiledProgram(ProgramKey programKey) throws IllegalSyntaxException {
+        try {
+            return compiledPrograms.get(programKey,
+                    () -> new ScriptParser().parseScript(new StringReader(programKey.programText), programKey.predefinedVariables));
+        } catch (ExecutionException | UncheckedExecutionException exp) {
+            Throwable cause = exp.getCause();
+            if (cause instanceof IllegalSyntaxException) {
+                throw (IllegalSyntaxException) cause;
+            }
+            throw new RuntimeException("Unable to compile program", cause);
+        }
+    }
+
+    public void dispose() {
+        backgroundCompiler.shutdownNow();
+        compiledPrograms.invalidateAll();
+    }
+
+    private static final class ProgramKey {
+        private final String programText;
+        private final Set<String> predefinedVariables;
+        private final int hashCode;
+
+        private ProgramKey(String programText, Set<String> predefinedVariables) {
+            this.programText = programText;
+            this.predefinedVariables = ImmutableSortedSet.copyOf(predefinedVariables);
+            this.hashCode = 31 * programText.hashCode() + this.predefinedVariables.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            ProgramKey that = (ProgramKey) o;
+
+            return hashCode == that.hashCode
+                    && programText.equals(that.programText)
+                    && predefinedVariables.equals(that.predefinedVariables);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -95,6 +95,9 @@ public class ComputerServerSystem extends BaseComponentSystem implements UpdateS
 
     private ExecutionCostConfiguration executionCostConfiguration;
 
+    private CompiledProgramCache compiledProgramCache = new CompiledProgramCache();
+    private Set<String> predefinedVariables;
+
     private boolean computerInTransitionState;
 
     @Override
@@ -110,6 +113,18 @@ public class ComputerServerSystem extends BaseComponentSystem implements UpdateS
         executionCostConfiguration = createExecutionCostConfiguration();
     }
 
+    @Override
+    public void shutdown() {
+        compiledProgramCache.dispose();
+    }
+
+    private void precompileProgram(String programText) {
+        if (predefinedVariables == null) {
+            predefinedVariables = ComputerContext.getPredefinedVariables(computerLanguageContextInitializer);
+        }
+        compiledProgramCache.precompileProgram(programText, predefinedVariables);
+    }
+
     private ExecutionCostConfiguration createExecutionCostConfiguration() {
         ConfigurableExecutionCostConfiguration result = new ConfigurableExecutionCostConfiguration();
         result.setGetContextValue(getConfigValue("getContextValue", 1));
@@ -180,6 +195,9 @@ public class ComputerServerSystem extends BaseComponentSystem implements UpdateS
             logger.debug("Creating computer context for computer: " + computer.computerId);
             computerContextMap.put(computer.computerId, new ComputerContext(computerModuleRegistry, computerEntity, computer.cpuSpeed,
                     computer.stackSize, computer.memorySize));
+            for (String programText : computer.programs.values()) {
+                precompileProgram(programText);
+            }
         }
     }
 
@@ -257,7 +275,8 @@ public class ComputerServerSystem extends BaseComponentSystem implements UpdateS
                 String programText = computer.programs.get(programName);
                 if (programText != null) {
                     try {
-                        computerContext.startProgram(programName, clientInfo, programText, event.getParams(), computerLanguageContextInitializer, executionCostConfiguration);
+                        computerContext.startProgram(programName, clientInfo, programText, event.getParams(), computerLanguageContextInitializer,
+                                executionCostConfiguration, compiledProgramCache);
                         client.send(new ProgramExecutionResultEvent(computer.computerId, "Program started"));
                     } catch (IllegalSyntaxException exp) {
                         client.send(new ProgramExecutionResultEvent(computer.computerId, exp.getMessage()));
@@ -277,6 +296,7 @@ public class ComputerServerSystem extends BaseComponentSystem implements UpdateS
             ComputerComponent computer = computerEntity.getComponent(ComputerComponent.class);
             computer.programs.put(event.getProgramName(), event.getProgramText());
             computerEntity.saveComponent(computer);
+            precompileProgram(event.getProgramText());
         }
     }
 
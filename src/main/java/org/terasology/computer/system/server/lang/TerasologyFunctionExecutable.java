@@ -22,6 +22,9 @@ import com.gempukku.lang.ExecutionContext;
 import com.gempukku.lang.ExecutionCostConfiguration;
 import com.gempukku.lang.ExecutionException;
 import com.gempukku.lang.ExecutionProgress;
+import com.gempukku.lang.MapShape;
+import com.gempukku.lang.NativeFunctionExecutable;
+import com.gempukku.lang.ShapedMap;
 import com.gempukku.lang.Variable;
 import com.gempukku.lang.execution.SimpleExecution;
 import org.terasology.rendering.nui.widgets.browser.data.ParagraphData;
@@ -34,14 +37,14 @@ import org.terasology.computer.ui.documentation.MethodDocumentation;
 
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 
-public abstract class TerasologyFunctionExecutable implements DocumentedFunctionExecutable {
+public abstract class TerasologyFunctionExecutable implements DocumentedFunctionExecutable, NativeFunctionExecutable {
     private DefaultMethodDocumentation methodDocumentation;
     private Set<String> parameterNames = new LinkedHashSet<>();
+    private MapShape parameterShape;
 
     protected TerasologyFunctionExecutable(String simpleDocumentation) {
         methodDocumentation = new DefaultMethodDocumentation(simpleDocumentation);
@@ -76,7 +79,11 @@ public abstract class TerasologyFunctionExecutable implements DocumentedFunction
     }
 
     @Override
-    public final Execution createExecution(final int line, ExecutionContext executionContext, CallContext callContext) {
+    public final Execution createNativeExecution(final int line, ExecutionContext executionContext, Variable[] parameterValues) {
+        if (parameterShape == null) {
+            parameterShape = MapShape.of(parameterNames);
+        }
+        final Map<String, Variable> parameters = new ShapedMap(parameterShape, parameterValues);
         return new DelayedExecution(getDuration(), 0,
                 new SimpleExecution() {
                     @Override
@@ -84,14 +91,8 @@ public abstract class TerasologyFunctionExecutable implements DocumentedFunction
                         final TerasologyComputerExecutionContext terasologyExecutionContext = (TerasologyComputerExecutionContext) context;
                         ComputerCallback computer = terasologyExecutionContext.getComputerCallback();
 
-                        Map<String, Variable> parameters = new HashMap<String, Variable>();
-                        final CallContext callContext = context.peekCallContext();
-                        for (String parameterName : parameterNames) {
-                            parameters.put(parameterName, callContext.getVariableValue(parameterName));
-                        }
-
-                        context.setReturnValue(new Variable(executeFunction(line, computer, parameters)));
-                        return new ExecutionProgress(configuration.getSetReturnValue());
+                        context.setContextValue(new Variable(executeFunction(line, computer, parameters)));
+                        return ExecutionProgress.of(configuration.getSetReturnValue());
                     }
                 });
     }
@@ -21,18 +21,19 @@ import com.gempukku.lang.ExecutionContext;
 import com.gempukku.lang.ExecutionCostConfiguration;
 import com.gempukku.lang.ExecutionException;
 import com.gempukku.lang.ExecutionProgress;
-import com.gempukku.lang.FunctionExecutable;
+import com.gempukku.lang.NativeFunctionExecutable;
+import com.gempukku.lang.Variable;
 import com.gempukku.lang.execution.SimpleExecution;
 import org.terasology.computer.context.ComputerCallback;
 import org.terasology.computer.context.TerasologyComputerExecutionContext;
 import org.terasology.computer.system.server.lang.ComputerModule;
 
-public class BindingFunctionWrapper implements FunctionExecutable {
+public class BindingFunctionWrapper implements NativeFunctionExecutable {
     private int slotNo;
     private ComputerModule module;
-    private FunctionExecutable function;
+    private NativeFunctionExecutable function;
 
-    public BindingFunctionWrapper(ComputerModule module, int slotNo, FunctionExecutable function) {
+    public BindingFunctionWrapper(ComputerModule module, int slotNo, NativeFunctionExecutable function) {
         this.module = module;
         this.slotNo = slotNo;
         this.function = function;
@@ -49,13 +50,13 @@ public class BindingFunctionWrapper implements FunctionExecutable {
     }
 
     @Override
-    public Execution createExecution(int line, ExecutionContext executionContext, final CallContext callContext) {
+    public Execution createNativeExecution(int line, ExecutionContext executionContext, Variable[] parameters) {
         final TerasologyComputerExecutionContext terasologyExecutionContext = (TerasologyComputerExecutionContext) executionContext;
         final ComputerCallback computerCallback = terasologyExecutionContext.getComputerCallback();
 
         final ComputerModule moduleAtSlot = computerCallback.getModule(slotNo);
         if (moduleAtSlot == module) {
-            return function.createExecution(line, executionContext, callContext);
+            return function.createNativeExecution(line, executionContext, parameters);
         } else {
             return getThrowingExceptionExecution(line);
         }
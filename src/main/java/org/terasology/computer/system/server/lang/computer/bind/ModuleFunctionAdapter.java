@@ -22,7 +22,9 @@ import com.gempukku.lang.ExecutionContext;
 import com.gempukku.lang.ExecutionCostConfiguration;
 import com.gempukku.lang.ExecutionException;
 import com.gempukku.lang.ExecutionProgress;
-import com.gempukku.lang.FunctionExecutable;
+import com.gempukku.lang.MapShape;
+import com.gempukku.lang.NativeFunctionExecutable;
+import com.gempukku.lang.ShapedMap;
 import com.gempukku.lang.Variable;
 import com.gempukku.lang.execution.SimpleExecution;
 import org.terasology.computer.context.ComputerCallback;
@@ -30,12 +32,12 @@ import org.terasology.computer.context.TerasologyComputerExecutionContext;
 import org.terasology.computer.system.server.lang.ModuleMethodExecutable;
 
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
 
-public class ModuleFunctionAdapter implements FunctionExecutable {
+public class ModuleFunctionAdapter implements NativeFunctionExecutable {
     private int _slotNo;
     private ModuleMethodExecutable _moduleFunction;
+    private MapShape _parameterShape;
 
     public ModuleFunctionAdapter(int slotNo, ModuleMethodExecutable moduleFunction) {
         _slotNo = slotNo;
@@ -53,40 +55,28 @@ public class ModuleFunctionAdapter implements FunctionExecutable {
     }
 
     @Override
-    public Execution createExecution(final int line, ExecutionContext executionContext, CallContext callContext) {
-        final SimpleParameterExecution execution = new SimpleParameterExecution(line);
+    public Execution createNativeExecution(final int line, ExecutionContext executionContext, Variable[] parameterValues) {
+        if (_parameterShape == null)
+            _parameterShape = MapShape.of(getParameterNames());
+        // Built once and passed to all the methods of the module function
+        final Map<String, Variable> parameters = new ShapedMap(_parameterShape, parameterValues);
+        final SimpleParameterExecution execution = new SimpleParameterExecution(line, parameters);
 
         int minimumExecutionTime;
         try {
-            minimumExecutionTime = _moduleFunction.getMinimumExecutionTime(line, getComputerCallback(executionContext), getVariableMap(executionContext));
+            minimumExecutionTime = _moduleFunction.getMinimumExecutionTime(line, getComputerCallback(executionContext), parameters);
         } catch (ExecutionException e) {
             minimumExecutionTime = 0;
         }
         return new DelayedExecution(_moduleFunction.getCpuCycleDuration(), minimumExecutionTime, execution) {
             @Override
             protected void onExecutionStart(ExecutionContext executionContext) throws ExecutionException {
-                Object result = _moduleFunction.onFunctionStart(line, getComputerCallback(executionContext), getVariableMap(executionContext));
+                Object result = _moduleFunction.onFunctionStart(line, getComputerCallback(executionContext), parameters);
                 execution.setParameter(result);
             }
         };
     }
 
-    private Map<String, Variable> getVariableMap(ExecutionContext context) {
-        final Collection<String> parameterNames = getParameterNames();
-        Map<String, Variable> parameters = new HashMap<String, Variable>();
-        final CallContext callContext = context.peekCallContext();
-        for (String parameterName : parameterNames) {
-            Variable variableValue;
-            try {
-                variableValue = callContext.getVariableValue(parameterName);
-            } catch (ExecutionException exp) {
-                variableValue = new Variable(null);
-            }
-            parameters.put(parameterName, variableValue);
-        }
-        return parameters;
-    }
-
     private ComputerCallback getComputerCallback(ExecutionContext context) {
         final TerasologyComputerExecutionContext terasologyExecutionContext = (TerasologyComputerExecutionContext) context;
         return terasologyExecutionContext.getComputerCallback();
@@ -94,10 +84,12 @@ public class ModuleFunctionAdapter implements FunctionExecutable {
 
     private class SimpleParameterExecution extends SimpleExecution {
         private int line;
+        private Map<String, Variable> parameters;
         private Object parameter;
 
-        private SimpleParameterExecution(int line) {
+        private SimpleParameterExecution(int line, Map<String, Variable> parameters) {
             this.line = line;
+            this.parameters = parameters;
         }
 
         public void setParameter(Object parameter) {
@@ -108,10 +100,8 @@ public class ModuleFunctionAdapter implements FunctionExecutable {
         protected ExecutionProgress execute(ExecutionContext context, ExecutionCostConfiguration configuration) throws ExecutionException {
             ComputerCallback computerCallback = getComputerCallback(context);
 
-            Map<String, Variable> parameters = getVariableMap(context);
-
-            context.setReturnValue(new Variable(_moduleFunction.onFunctionEnd(line, computerCallback, parameters, parameter)));
-            return new ExecutionProgress(configuration.getSetReturnValue());
+            context.setContextValue(new Variable(_moduleFunction.onFunctionEnd(line, computerCallback, parameters, parameter)));
+            return ExecutionProgress.of(configuration.getSetReturnValue());
         }
 
     }
@@ -17,6 +17,7 @@ package org.terasology.computer.system.server.lang.computer.bind;
 
 
 import com.gempukku.lang.ExecutionContext;
+import com.gempukku.lang.FunctionExecutable;
 import com.gempukku.lang.ObjectDefinition;
 import com.gempukku.lang.Variable;
 import org.terasology.computer.context.ComputerCallback;
@@ -24,9 +25,16 @@ import org.terasology.computer.context.TerasologyComputerExecutionContext;
 import org.terasology.computer.system.server.lang.ComputerModule;
 import org.terasology.computer.system.server.lang.ModuleMethodExecutable;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public class SlotBindingObjectDefinition implements ObjectDefinition {
     private int _slotNo;
 
+    // Functions created for the module currently in the slot, so a method called repeatedly is created only once
+    private ComputerModule _cachedModule;
+    private Map<String, FunctionExecutable> _cachedFunctions = new HashMap<String, FunctionExecutable>();
+
     public SlotBindingObjectDefinition(int slotNo) {
         _slotNo = slotNo;
     }
@@ -40,12 +48,20 @@ public class SlotBindingObjectDefinition implements ObjectDefinition {
         if (module == null)
             return new Variable(null);
 
-        final ModuleMethodExecutable moduleFunction = module.getMethodByName(name);
+        if (module != _cachedModule) {
+            _cachedModule = module;
+            _cachedFunctions.clear();
+        }
 
-        if (moduleFunction != null) {
-            return new Variable(new BindingFunctionWrapper(module, _slotNo, new ModuleFunctionAdapter(_slotNo, moduleFunction)));
-        } else {
-            return new Variable(null);
+        FunctionExecutable function = _cachedFunctions.get(name);
+        if (function == null) {
+            final ModuleMethodExecutable moduleFunction = module.getMethodByName(name);
+            if (moduleFunction == null)
+                return new Variable(null);
+
+            function = new BindingFunctionWrapper(module, _slotNo, new ModuleFunctionAdapter(_slotNo, moduleFunction));
+            _cachedFunctions.put(name, function);
         }
+        return new Variable(function);
     }
 }
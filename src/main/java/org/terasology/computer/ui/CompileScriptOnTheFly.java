@@ -26,18 +26,26 @@ import org.terasology.computer.system.server.lang.ComputerModule;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.regex.Pattern;
 
 public class CompileScriptOnTheFly {
     private volatile CompileStatus compileStatus;
+    // Kept while the next program text is being compiled, so the lines that did not change stay highlighted
+    private volatile CompileStatus lastCompileStatus;
     private volatile String scriptText;
     private volatile boolean finishedEditing;
 
+    private static final Pattern LINE_SEPARATOR = Pattern.compile("\r\n|\r|\n");
+
     private final Object lockObject = new Object();
     private ScriptParser scriptParser = new ScriptParser();
     private Set<String> predefinedVariables = new HashSet<>();
@@ -89,6 +97,21 @@ public class CompileScriptOnTheFly {
         return compileStatus;
     }
 
+    /**
+     * Returns highlighting of the line from the last finished compilation, if the line had the same text in it.
+     *
+     * @param line     Index of the line.
+     * @param lineText Current text of the line.
+     * @return Highlighted parts of the line.
+     */
+    public List<ParseInfo> getLineParseInfo(int line, CharSequence lineText) {
+        CompileStatus status = lastCompileStatus;
+        if (status == null) {
+            return Collections.emptyList();
+        }
+        return status.getLineParseInfo(line, lineText);
+    }
+
     public void finishedEditing() {
         finishedEditing = true;
         synchronized (lockObject) {
@@ -106,18 +129,24 @@ public class CompileScriptOnTheFly {
 
             CompileStatus newCompileStatus = null;
             if (scriptTextToCompile != null) {
-                ParseInfoProducer parseInfoProducer = new ParseInfoProducer();
+                String[] lines = LINE_SEPARATOR.split(scriptTextToCompile, -1);
+                ParseInfoProducer parseInfoProducer = new ParseInfoProducer(lines.length);
                 try {
                     scriptParser.parseScript(new StringReader(scriptTextToCompile), predefinedVariables, parseInfoProducer);
-                    newCompileStatus = new CompileStatus(true, null, parseInfoProducer.result);
+                    parseInfoProducer.markParsedLines(lines.length);
+                    newCompileStatus = new CompileStatus(true, null, lines, parseInfoProducer);
                 } catch (IllegalSyntaxException exp) {
-                    newCompileStatus = new CompileStatus(false, exp, parseInfoProducer.result);
+                    // Lines following the error are not parsed, they keep highlighting from the previous compilation
+                    parseInfoProducer.markParsedLines(Math.min(exp.getLine(), lines.length));
+                    parseInfoProducer.copyUnparsedLines(lastCompileStatus, lines, exp.getLine() + 1);
+                    newCompileStatus = new CompileStatus(false, exp, lines, parseInfoProducer);
                 } catch (IOException exp) {
                     // Can't really happen, as we use StringReader, but oh well
-                    newCompileStatus = new CompileStatus(false, null, parseInfoProducer.result);
+                    newCompileStatus = new CompileStatus(false, null, lines, parseInfoProducer);
                 } catch (RuntimeException exp) {
-                    newCompileStatus = new CompileStatus(false, null, parseInfoProducer.result);
+                    newCompileStatus = new CompileStatus(false, null, lines, parseInfoProducer);
                 }
+                lastCompileStatus = newCompileStatus;
             }
 
             synchronized (lockObject) {
@@ -138,12 +167,43 @@ public class CompileScriptOnTheFly {
     public static final class CompileStatus {
         public final boolean success;
         public final IllegalSyntaxException error;
-        public final Collection<ParseInfo> parseInfo;
+        private final String[] lines;
+        private final List<List<ParseInfo>> lineParseInfo;
+        private final boolean[] completeLines;
+        private Map<String, List<ParseInfo>> parseInfoByLineText;
 
-        private CompileStatus(boolean success, IllegalSyntaxException error, Collection<ParseInfo> parseInfo) {
+        private CompileStatus(boolean success, IllegalSyntaxException error, String[] lines, ParseInfoProducer parseInfoProducer) {
             this.error = error;
             this.success = success;
-            this.parseInfo = Collections.unmodifiableCollection(parseInfo);
+            this.lines = lines;
+            this.lineParseInfo = parseInfoProducer.result;
+            this.completeLines = parseInfoProducer.completeLines;
+        }
+
+        /**
+         * Returns highlighting of the line, if the line had the same text in it, when it was compiled.
+         *
+         * @param line     Index of the line.
+         * @param lineText Current text of the line.
+         * @return Highlighted parts of the line.
+         */
+        public List<ParseInfo> getLineParseInfo(int line, CharSequence lineText) {
+            if (line < lines.length && lines[line].contentEquals(lineText)) {
+                return Collections.unmodifiableList(lineParseInfo.get(line));
+            }
+            return Collections.emptyList();
+        }
+
+        private synchronized List<ParseInfo> getCompleteLineParseInfo(String lineText) {
+            if (parseInfoByLineText == null) {
+                parseInfoByLineText = new HashMap<>();
+                for (int i = 0; i < lines.length; i++) {
+                    if (completeLines[i]) {
+                        parseInfoByLineText.put(lines[i], lineParseInfo.get(i));
+                    }
+                }
+            }
+            return parseInfoByLineText.get(lineText);
         }
     }
 
@@ -162,11 +222,44 @@ public class CompileScriptOnTheFly {
     }
 
     private static class ParseInfoProducer implements ScriptParsingCallback {
-        private List<ParseInfo> result = new LinkedList<>();
+        private List<List<ParseInfo>> result;
+        // Lines highlighted as a whole, either parsed before a syntax error, or copied from the previous compilation
+        private boolean[] completeLines;
+
+        private ParseInfoProducer(int lineCount) {
+            completeLines = new boolean[lineCount];
+            result = new ArrayList<>(lineCount);
+            for (int i = 0; i < lineCount; i++) {
+                result.add(new ArrayList<>(0));
+            }
+        }
 
         @Override
         public void parsed(int line, int column, int length, Type type) {
-            result.add(new ParseInfo(line, column, length, type));
+            if (line < result.size()) {
+                result.get(line).add(new ParseInfo(line, column, length, type));
+            }
+        }
+
+        private void markParsedLines(int lineCount) {
+            Arrays.fill(completeLines, 0, lineCount, true);
+        }
+
+        private void copyUnparsedLines(CompileStatus previousStatus, String[] lines, int fromLine) {
+            if (previousStatus == null) {
+                return;
+            }
+            for (int line = fromLine; line < lines.length; line++) {
+                List<ParseInfo> previousParseInfo = previousStatus.getCompleteLineParseInfo(lines[line]);
+                if (previousParseInfo != null) {
+                    completeLines[line] = true;
+                    List<ParseInfo> lineParseInfo = result.get(line);
+                    lineParseInfo.clear();
+                    for (ParseInfo parseInfo : previousParseInfo) {
+                        lineParseInfo.add(new ParseInfo(line, parseInfo.column, parseInfo.length, parseInfo.type));
+                    }
+                }
+            }
         }
     }
 }
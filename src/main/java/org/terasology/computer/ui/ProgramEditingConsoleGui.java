@@ -83,25 +83,23 @@ public class ProgramEditingConsoleGui {
             if (programLine.length() > editedDisplayStartX) {
                 String displayedLine = programLine.substring(editedDisplayStartX, Math.min(programLine.length(), editedDisplayStartX + getCharactersInRow()));
 
-                final int finalLine = line;
+                final List<CompileScriptOnTheFly.ParseInfo> lineParseInfo = onTheFlyCompiler.getLineParseInfo(line, programLine);
                 computerTerminalWidget.drawMonospacedText(canvas, displayedLine, x, y + (line - editedDisplayStartY) * fontHeight, new ComputerTerminalWidget.Coloring() {
                     @Override
                     public Color getColor(int column) {
                         int realColumn = column + editedDisplayStartX;
-                        if (compileStatusObj != null) {
-                            for (CompileScriptOnTheFly.ParseInfo parseInfo : compileStatusObj.parseInfo) {
-                                if (parseInfo.line == finalLine && parseInfo.column <= realColumn && realColumn < parseInfo.column + parseInfo.length) {
-                                    if (parseInfo.type == ScriptParsingCallback.Type.KEYWORD) {
-                                        return Color.GREEN;
-                                    } else if (parseInfo.type == ScriptParsingCallback.Type.LITERAL) {
-                                        return Color.YELLOW;
-                                    } else if (parseInfo.type == ScriptParsingCallback.Type.COMMENT) {
-                                        return Color.GREY;
-                                    } else if (parseInfo.type == ScriptParsingCallback.Type.VARIABLE) {
-                                        return Color.RED;
-                                    } else if (parseInfo.type == ScriptParsingCallback.Type.CONSTANT) {
-                                        return new Color(0.8f, 0.8f, 1f);
-                                    }
+                        for (CompileScriptOnTheFly.ParseInfo parseInfo : lineParseInfo) {
+                            if (parseInfo.column <= realColumn && realColumn < parseInfo.column + parseInfo.length) {
+                                if (parseInfo.type == ScriptParsingCallback.Type.KEYWORD) {
+                                    return Color.GREEN;
+                                } else if (parseInfo.type == ScriptParsingCallback.Type.LITERAL) {
+                                    return Color.YELLOW;
+                                } else if (parseInfo.type == ScriptParsingCallback.Type.COMMENT) {
+                                    return Color.GREY;
+                                } else if (parseInfo.type == ScriptParsingCallback.Type.VARIABLE) {
+                                    return Color.RED;
+                                } else if (parseInfo.type == ScriptParsingCallback.Type.CONSTANT) {
+                                    return new Color(0.8f, 0.8f, 1f);
                                 }
                             }
                         }
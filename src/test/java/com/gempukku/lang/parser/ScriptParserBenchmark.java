@@ -0,0 +1,88 @@
+package com.gempukku.lang.parser;
+
+import com.gempukku.lang.IllegalSyntaxException;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+
+/**
+ * Measures time of parsing generated programs of 1k to 50k lines, to check that parsing stays linear in the size of
+ * the program. The same number of lines always generates the same program, so results can be compared between
+ * revisions. Line counts to measure can be passed as arguments:
+ * <pre>
+ * java com.gempukku.lang.parser.ScriptParserBenchmark [lines...]
+ * </pre>
+ * Each program is parsed a number of times after a warm-up, with garbage collected before each run, both the best
+ * and the median time are reported, as a single run is easily distorted by garbage collection or JIT compilation.
+ */
+public class ScriptParserBenchmark {
+    private static final int[] DEFAULT_LINES = {1000, 5000, 10000, 25000, 50000};
+    private static final int WARM_UP_ROUNDS = 5;
+    private static final int MEASURED_RUNS = 15;
+
+    public static void main(String[] args) throws IllegalSyntaxException, IOException {
+        int[] lineCounts = DEFAULT_LINES;
+        if (args.length > 0) {
+            lineCounts = new int[args.length];
+            for (int i = 0; i < args.length; i++)
+                lineCounts[i] = Integer.parseInt(args[i]);
+        }
+
+        String[] programs = new String[lineCounts.length];
+        for (int i = 0; i < lineCounts.length; i++)
+            programs[i] = generateProgram(lineCounts[i]);
+
+        for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+            for (String program : programs)
+                parse(program);
+        }
+
+        System.out.println(String.format("%8s %10s %10s %10s", "lines", "best ms", "median ms", "us/line"));
+        for (int i = 0; i < programs.length; i++) {
+            long[] times = new long[MEASURED_RUNS];
+            for (int run = 0; run < MEASURED_RUNS; run++) {
+                System.gc();
+                final long start = System.nanoTime();
+                parse(programs[i]);
+                times[run] = System.nanoTime() - start;
+            }
+            Arrays.sort(times);
+            final long median = times[MEASURED_RUNS / 2];
+            System.out.println(String.format("%8d %10.1f %10.1f %10.2f", lineCounts[i], times[0] / 1000000f, median / 1000000f,
+                    median / 1000f / lineCounts[i]));
+        }
+    }
+
+    private static void parse(String program) throws IllegalSyntaxException, IOException {
+        new ScriptParser().parseScript(new StringReader(program));
+    }
+
+    /**
+     * Generates a program of the given number of lines. The program consists of functions mixing variables, loops,
+     * conditions, maps, lists, String literals with escapes and comments, each one called once. Names and constants
+     * differ between the functions, so each function defines its own variables in the top level scope.
+     */
+    public static String generateProgram(int lines) {
+        StringBuilder program = new StringBuilder();
+        int index = 0;
+        int linesLeft = lines;
+        while (linesLeft >= 9) {
+            program.append("// Helper number ").append(index).append("\n");
+            program.append("function f").append(index).append("(a, b) {\n");
+            program.append("    var s = \"text \\\"quoted\\\" \" + a;\n");
+            program.append("    var m = {x: a, y: b, \"z\": [").append(index).append(", ").append(index + 1).append(", 2.5]};\n");
+            program.append("    for (var i = 0; i < b; i++) { if (i % 2 == 0) { s = s + m.x * i - (b / 2.5); } else { m.y += i; } }\n");
+            program.append("    while (m.y > 100 && s != null) { m.y = m.y - 100; }\n");
+            program.append("    return s;\n");
+            program.append("}\n");
+            program.append("var v").append(index).append(" = f").append(index).append("(").append(index).append(", ")
+                    .append(index % 7 + 1).append(");\n");
+            index++;
+            linesLeft -= 9;
+        }
+        for (int i = 0; i < linesLeft; i++)
+            program.append("var r").append(i).append(" = ").append(i).append(";\n");
+        return program.toString();
+    }
+}